@@ -1,54 +1,422 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class Autocomplete implements IAutocomplete {
     int numberOfSuggestions;
-    private Trie<ITerm> myTrie;
+    private IRankedTrie<ITerm> myTrie;
+
+    // Maps each word to the same ITerm the trie stores for it, so that exact-match lookups and
+    // repeated addWord calls do not walk the trie.
+    private final HashMap<String, ITerm> myTerms = new HashMap<>();
+
+    // Whether myTerms holds every word of the trie. False for a mapped index, whose terms are
+    // only read from the file on demand.
+    private boolean indexed = true;
+
+    // Cache the results of getSuggestions and countPrefixes by prefix, or null if caching is
+    // disabled.
+    private PrefixCache<List<ITerm>> suggestionCache;
+    private PrefixCache<Integer> countCache;
+
+    // The number of suggestions the lists in suggestionCache were computed for.
+    private int cachedSuggestions;
 
     public Autocomplete() {
-        myTrie = new Trie<>();
+        this(new Trie<>(ITerm::getWeight));
+    }
+
+    /**
+     * Creates an Autocomplete backed by the specified trie, for example a {@link RadixTrie}
+     *
+     * @param trie an empty trie, weighted by {@link ITerm#getWeight()}
+     */
+    public Autocomplete(IRankedTrie<ITerm> trie) {
+        myTrie = trie;
     }
 
     /**
-     * Adds a new word with its associated weight to the Trie
+     * Adds a new word with its associated weight to the Trie. If the word is already present
+     * with the same weight, the Trie is left untouched.
      *
      * @param word the word to be added to the Trie
      * @param weight the weight of the word
+     * @throws UnsupportedOperationException if the backing trie is read-only
      */
     @Override
     public void addWord(String word, long weight) {
+        checkWritable();
+        ITerm existing = myTerms.get(word);
+        if (existing != null && existing.getWeight() == weight) {
+            return;
+        }
         ITerm term = new Term(word, weight);
         myTrie.put(word, term);
+        myTerms.put(word, term);
+        invalidateCaches(word);
+    }
+
+    /**
+     * Adds delta to the weight of the specified word, adding the word with weight delta if it is
+     * not present yet. Only the trie nodes on the path to the word are updated, so the suggestions
+     * for every prefix of the word reflect the new weight immediately.
+     *
+     * @param word the word whose weight changes
+     * @param delta the amount to add to the weight, which may be negative
+     * @return the new weight of word
+     * @throws IllegalArgumentException if the specified word is null, if it contains characters
+     * that are not lowercase letters, or if the new weight would be negative or overflow
+     * @throws UnsupportedOperationException if the backing trie is read-only
+     * @implSpec This method should run in O(H) time.
+     */
+    public long incrementWeight(String word, long delta) {
+        if (word == null) {
+            throw new IllegalArgumentException();
+        }
+        checkWritable();
+        ITerm existing = myTerms.get(word);
+        if (existing == null && !indexed) {
+            existing = myTrie.get(word);
+        }
+        long weight = existing == null ? 0 : existing.getWeight();
+        if (delta > 0 && weight > Long.MAX_VALUE - delta) {
+            throw new IllegalArgumentException("Weight overflow: " + weight + " + " + delta);
+        }
+        long newWeight = weight + delta;
+        if (newWeight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative: " + newWeight);
+        }
+        if (existing != null && delta == 0) {
+            return weight;
+        }
+        ITerm term = new Term(word, newWeight);
+        myTrie.put(word, term);
+        myTerms.put(word, term);
+        invalidateCaches(word);
+        return newWeight;
+    }
+
+    /**
+     * Throws UnsupportedOperationException if the backing trie is a read-only {@link FrozenTrie}
+     * or {@link MappedTrie}, so that modifying calls fail even when they would change nothing.
+     */
+    private void checkWritable() {
+        if (myTrie instanceof FrozenTrie || myTrie instanceof MappedTrie) {
+            throw new UnsupportedOperationException("Autocomplete is read-only");
+        }
+    }
+
+    /**
+     * Returns the weight of the specified word.
+     *
+     * @param word the word to look up
+     * @return the weight of word, or -1 if it has not been added
+     * @throws IllegalArgumentException if the specified word is null
+     * @implSpec This method should run in O(1) expected time, unless this Autocomplete was
+     * opened with {@link #openIndex(String, int)}.
+     */
+    public long getWeight(String word) {
+        if (word == null) {
+            throw new IllegalArgumentException();
+        }
+        ITerm term = myTerms.get(word);
+        if (term == null && !indexed) {
+            term = myTrie.get(word);
+        }
+        return term == null ? -1 : term.getWeight();
     }
 
     /**
      * Initializes the Trie
      *
      * @param filename the file to read all the autocomplete data from each line
-     *                 contains a word and its weight This method will call the
-     *                 addWord method
+     *                 contains a word and its weight. When the backing trie is a
+     *                 {@link Trie}, words are inserted through its bulk loader, which
+     *                 is fastest when the file is sorted by word; otherwise this
+     *                 method will call the addWord method
      * @param k the maximum number of suggestions that should be displayed
      */
     @Override
     public void buildTrie(String filename, int k) {
         numberOfSuggestions = k;
+        clearCaches();
 
         try {
-            BufferedReader inFile = new BufferedReader(new FileReader(filename));
-            String currLine = inFile.readLine();
-            while ((currLine = inFile.readLine()) != null) {
-                String[] line = currLine.trim().split("\t");
-                if (line.length == 2) {
-                    addWord(line[1].toLowerCase(), Long.parseLong(line[0]));
+            if (myTrie instanceof Trie) {
+                try (Trie<ITerm>.Loader loader = ((Trie<ITerm>) myTrie).loader()) {
+                    WordBankParser.parse(filename, (word, weight) -> {
+                        String query = word.toString();
+                        ITerm term = new Term(query, weight);
+                        loader.put(query, term);
+                        myTerms.put(query, term);
+                    });
                 }
+            } else {
+                WordBankParser.parse(filename, (word, weight) -> addWord(word.toString(), weight));
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Initializes the Trie like {@link #buildTrie(String, int)}, then precomputes the k heaviest
+     * terms of every prefix of at most precomputedDepth letters, so that getSuggestions for such
+     * a prefix only walks the prefix and copies a list. Later addWord and incrementWeight calls
+     * keep the precomputed lists up to date.
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @param precomputedDepth the length of the longest prefix whose suggestions are precomputed
+     * @throws IllegalArgumentException if k is not positive or precomputedDepth is negative
+     * @throws UnsupportedOperationException if the backing trie is not a {@link Trie}
+     */
+    public void buildTrie(String filename, int k, int precomputedDepth) {
+        if (!(myTrie instanceof Trie)) {
+            throw new UnsupportedOperationException("Only a Trie can precompute suggestions");
+        }
+        if (k <= 0 || precomputedDepth < 0) {
+            throw new IllegalArgumentException();
+        }
+        buildTrie(filename, k);
+        ((Trie<ITerm>) myTrie).precomputeTopValues(k, precomputedDepth);
+    }
+
+    /**
+     * Initializes the Trie like {@link #buildTrie(String, int)}, parsing the file and building
+     * one sub-trie per first letter concurrently on the common fork-join pool. For a valid word
+     * bank the result is identical to the serial build. Falls back to the serial build unless
+     * the backing trie is an empty {@link Trie}.
+     * <p>
+     * The two builds differ if a word contains a character that is not a letter: the serial
+     * build keeps the words before it, while this one keeps no words at all.
+     *
+     * @param filename the file to read all the autocomplete data from
+     * @param k the maximum number of suggestions that should be displayed
+     * @throws IllegalArgumentException if a word contains characters that are not letters
+     */
+    public void buildTrieParallel(String filename, int k) {
+        if (!(myTrie instanceof Trie) || !myTrie.isEmpty()) {
+            buildTrie(filename, k);
+            return;
+        }
+        numberOfSuggestions = k;
+        clearCaches();
+
+        try {
+            ShardedTrieBuilder.build(filename, (Trie<ITerm>) myTrie, ForkJoinPool.commonPool());
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            // Index whatever the trie holds, so that the two stay in agreement even on failure
+            myTerms.ensureCapacity(myTrie.size());
+            for (Iterator<Map.Entry<CharSequence, ITerm>> it = myTrie.entryIterator();
+                    it.hasNext(); ) {
+                Map.Entry<CharSequence, ITerm> entry = it.next();
+                myTerms.put(entry.getKey().toString(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Converts the backing trie into a read-only {@link FrozenTrie}, for word banks that are not
+     * modified once built. Afterwards addWord and incrementWeight throw
+     * UnsupportedOperationException, even for calls that would not change anything.
+     *
+     * @throws UnsupportedOperationException if the backing trie is not a {@link Trie}
+     */
+    public void freeze() {
+        if (myTrie instanceof FrozenTrie) {
+            return;
+        }
+        if (!(myTrie instanceof Trie)) {
+            throw new UnsupportedOperationException("Only a Trie can be frozen");
+        }
+        myTrie = new FrozenTrie<>((Trie<ITerm>) myTrie);
+    }
+
+    /**
+     * Writes the word bank to a binary index file that {@link #openIndex(String, int)} can map
+     * directly, so later processes do not have to rebuild the trie.
+     *
+     * @param filename the index file to write
+     * @throws IOException if the file cannot be written
+     * @throws UnsupportedOperationException if the backing trie is not a {@link Trie} or a
+     * {@link FrozenTrie}
+     */
+    public void writeIndex(String filename) throws IOException {
+        FrozenTrie<ITerm> frozen;
+        if (myTrie instanceof FrozenTrie) {
+            frozen = (FrozenTrie<ITerm>) myTrie;
+        } else if (myTrie instanceof Trie) {
+            frozen = new FrozenTrie<>((Trie<ITerm>) myTrie);
+        } else {
+            throw new UnsupportedOperationException("Only a Trie can be written to an index");
+        }
+        MappedTrie.write(frozen, filename);
+    }
+
+    /**
+     * Opens a read-only Autocomplete served from a memory-mapped index file written by
+     * {@link #writeIndex(String)}. Nothing is loaded onto the heap up front.
+     *
+     * @param filename the index file to open
+     * @param k the maximum number of suggestions that should be displayed
+     * @return an Autocomplete backed by the mapped index
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static Autocomplete openIndex(String filename, int k) throws IOException {
+        Autocomplete autocomplete = new Autocomplete(MappedTrie.open(filename));
+        autocomplete.numberOfSuggestions = k;
+        autocomplete.indexed = false;
+        return autocomplete;
+    }
+
+    /**
+     * Starts a completion session for a user typing a prefix one letter at a time. When the
+     * backing trie is a {@link Trie}, the session keeps a cursor on the node of the current
+     * prefix, so each keystroke moves along one edge instead of walking the prefix again.
+     *
+     * @return a session whose prefix is empty
+     */
+    public Session startSession() {
+        return new Session();
+    }
+
+    /**
+     * A prefix being typed, returned by {@link #startSession()}. The session is not cached, so
+     * its queries always reflect the current words.
+     */
+    public class Session {
+        private final Trie<ITerm>.Cursor cursor;
+        private final StringBuilder prefix = new StringBuilder();
+
+        private Session() {
+            cursor = myTrie instanceof Trie ? ((Trie<ITerm>) myTrie).cursor() : null;
+        }
+
+        /**
+         * Appends a letter to the prefix.
+         *
+         * @param c the letter typed
+         * @throws IllegalArgumentException if c is not a lowercase letter
+         * @implSpec This method should run in O(1) time.
+         */
+        public void type(char c) {
+            if (c < 'a' || c > 'z') {
+                throw new IllegalArgumentException("Character must be in the range [a..z]");
+            }
+            if (cursor != null) {
+                cursor.advance(c);
+            }
+            prefix.append(c);
+        }
+
+        /**
+         * Removes the last letter of the prefix, if any.
+         *
+         * @return false if the prefix was already empty
+         * @implSpec This method should run in O(1) time.
+         */
+        public boolean backspace() {
+            if (prefix.length() == 0) {
+                return false;
+            }
+            if (cursor != null) {
+                cursor.retreat();
+            }
+            prefix.setLength(prefix.length() - 1);
+            return true;
+        }
+
+        /**
+         * @return the prefix typed so far
+         */
+        public String getPrefix() {
+            return prefix.toString();
+        }
+
+        /**
+         * @return the same suggestions as {@link Autocomplete#getSuggestions(String)} for the
+         * current prefix
+         */
+        public List<ITerm> getSuggestions() {
+            int k = numberOfSuggestions > 0 ? numberOfSuggestions : Integer.MAX_VALUE;
+            return cursor == null ? myTrie.topValuesWithPrefix(prefix, k) : cursor.topValues(k);
+        }
+
+        /**
+         * @return the number of words that start with the current prefix
+         */
+        public int countPrefixes() {
+            return cursor == null ? myTrie.countPrefixes(prefix) : cursor.countValues();
+        }
+    }
+
+    /**
+     * Caches the results of getSuggestions and countPrefixes for up to maximumSize prefixes
+     * each, replacing any previous cache. The caches admit a prefix only if it is requested
+     * more often than the prefixes they would evict, so a burst of rare prefixes does not flush
+     * the popular ones, see {@link PrefixCache}. Adding a word invalidates the cached results
+     * of every prefix of that word.
+     *
+     * @param maximumSize the maximum number of prefixes cached per query type, or 0 to disable
+     *                    caching
+     * @throws IllegalArgumentException if the maximum size is negative
+     */
+    public void enableCache(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        }
+        if (maximumSize == 0) {
+            suggestionCache = null;
+            countCache = null;
+            return;
+        }
+        suggestionCache = new PrefixCache<>(maximumSize);
+        countCache = new PrefixCache<>(maximumSize);
+        cachedSuggestions = numberOfSuggestions;
+    }
+
+    /**
+     * @return the number of getSuggestions and countPrefixes calls answered from the cache
+     */
+    public long cacheHitCount() {
+        return suggestionCache == null ? 0 : suggestionCache.hitCount() + countCache.hitCount();
+    }
+
+    /**
+     * @return the number of getSuggestions and countPrefixes calls the cache could not answer
+     */
+    public long cacheMissCount() {
+        return suggestionCache == null ? 0 : suggestionCache.missCount() + countCache.missCount();
+    }
+
+    /**
+     * @return the number of results the cache dropped or declined to keep for lack of room
+     */
+    public long cacheEvictionCount() {
+        return suggestionCache == null
+                ? 0 : suggestionCache.evictionCount() + countCache.evictionCount();
+    }
+
+    private void invalidateCaches(String word) {
+        if (suggestionCache != null) {
+            suggestionCache.invalidatePrefixesOf(word);
+            countCache.invalidatePrefixesOf(word);
+        }
+    }
+
+    private void clearCaches() {
+        if (suggestionCache != null) {
+            suggestionCache.clear();
+            countCache.clear();
+        }
+    }
+
     /**
      * @return k the maximum number of suggestions that should be displayed
      */
@@ -65,20 +433,49 @@ public class Autocomplete implements IAutocomplete {
      */
     @Override
     public int countPrefixes(String prefix) {
-
-        return myTrie.countPrefixes(prefix);
+        if (countCache == null) {
+            return myTrie.countPrefixes(prefix);
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        Integer cached = countCache.get(prefix);
+        if (cached != null) {
+            return cached;
+        }
+        int count = myTrie.countPrefixes(prefix);
+        countCache.put(prefix, count);
+        return count;
     }
 
     /**
      * @param prefix a string that can contain any character
-     * @return a List containing all the ITerm objects with query starting with
-     *         prefix. Return an empty list if there are no ITerm object starting
-     *         with prefix.
+     * @return a List containing the numberSuggestions() heaviest ITerm objects with
+     *         query starting with prefix, in descending order of weight. If no limit
+     *         was set by buildTrie, all matching ITerm objects are returned. Return an
+     *         empty list if there are no ITerm object starting with prefix.
      * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
      * characters that are not lowercase letters
      */
     @Override
     public List<ITerm> getSuggestions(String prefix) {
-        return myTrie.allValuesWithPrefix(prefix);
+        int k = numberOfSuggestions > 0 ? numberOfSuggestions : Integer.MAX_VALUE;
+        if (suggestionCache == null) {
+            return myTrie.topValuesWithPrefix(prefix, k);
+        }
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        if (cachedSuggestions != numberOfSuggestions) {
+            suggestionCache.clear();
+            cachedSuggestions = numberOfSuggestions;
+        }
+        List<ITerm> cached = suggestionCache.get(prefix);
+        if (cached != null) {
+            return new ArrayList<>(cached);
+        }
+        List<ITerm> suggestions = myTrie.topValuesWithPrefix(prefix, k);
+        suggestionCache.put(prefix, new ArrayList<>(suggestions));
+        return suggestions;
     }
 }
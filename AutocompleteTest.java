@@ -46,6 +46,212 @@ public class AutocompleteTest {
         assertTrue(results.toString().contains("charmander"));
     }
 
+    @Test
+    public void testAutocompleteGetSuggestionsTopK() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("charmeleon", 25);
+        myAutocomplete.addWord("chansey", 75);
+        myAutocomplete.numberOfSuggestions = 2;
+        List<ITerm> results = myAutocomplete.getSuggestions("ch");
+        assertEquals(2, results.size());
+        assertEquals("100\tcharizard", results.get(0).toString());
+        assertEquals("75\tchansey", results.get(1).toString());
+    }
+
+    @Test
+    public void testAutocompleteRadixTrie() {
+        Autocomplete myAutocomplete = new Autocomplete(new RadixTrie<>(ITerm::getWeight));
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("charmeleon", 25);
+        myAutocomplete.addWord("blastoise", 50);
+        myAutocomplete.numberOfSuggestions = 2;
+        assertEquals(3, myAutocomplete.countPrefixes("char"));
+        List<ITerm> results = myAutocomplete.getSuggestions("char");
+        assertEquals(2, results.size());
+        assertEquals("100\tcharizard", results.get(0).toString());
+        assertEquals("50\tcharmander", results.get(1).toString());
+    }
+
+    @Test
+    public void testAutocompleteFreeze() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("blastoise", 50);
+        myAutocomplete.freeze();
+        myAutocomplete.numberOfSuggestions = 1;
+        assertEquals(2, myAutocomplete.countPrefixes("char"));
+        assertEquals("100\tcharizard", myAutocomplete.getSuggestions("c").get(0).toString());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAutocompleteAddWordAfterFreeze() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.freeze();
+        myAutocomplete.addWord("charmander", 50);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAutocompleteAddUnchangedWordAfterFreeze() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.freeze();
+        myAutocomplete.addWord("charizard", 100);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAutocompleteIncrementWeightAfterFreeze() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.freeze();
+        myAutocomplete.incrementWeight("charizard", 0);
+    }
+
+    @Test
+    public void testAutocompleteWriteAndOpenIndex() throws java.io.IOException {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("charmeleon", 25);
+        myAutocomplete.addWord("blastoise", 50);
+        java.io.File indexFile = java.io.File.createTempFile("autocomplete", ".idx");
+        try {
+            myAutocomplete.writeIndex(indexFile.getPath());
+            Autocomplete opened = Autocomplete.openIndex(indexFile.getPath(), 2);
+            assertEquals(3, opened.countPrefixes("char"));
+            assertEquals("[100\tcharizard, 50\tcharmander]",
+                    opened.getSuggestions("char").toString());
+            assertEquals(25, opened.getWeight("charmeleon"));
+            assertEquals(-1, opened.getWeight("char"));
+        } finally {
+            indexFile.delete();
+        }
+    }
+
+    @Test
+    public void testAutocompleteBuildTrie() throws java.io.IOException {
+        java.io.File wordBank = java.io.File.createTempFile("wordbank", ".txt");
+        try (java.io.FileWriter out = new java.io.FileWriter(wordBank)) {
+            out.write("6\r\n");
+            out.write("  100\tCharizard\r\n");
+            out.write("50\tcharmander\n");
+            out.write("not a weight\tcharmeleon\n");
+            out.write("25\tchar\tmeleon\n");
+            out.write("\n");
+            out.write("50\tblastoise");
+        }
+        try {
+            Autocomplete myAutocomplete = new Autocomplete();
+            myAutocomplete.buildTrie(wordBank.getPath(), 5);
+            assertEquals(5, myAutocomplete.numberSuggestions());
+            assertEquals(2, myAutocomplete.countPrefixes("char"));
+            assertEquals(3, myAutocomplete.countPrefixes(""));
+            assertEquals("[100\tcharizard, 50\tcharmander]",
+                    myAutocomplete.getSuggestions("ch").toString());
+            assertEquals(100, myAutocomplete.getWeight("charizard"));
+            assertEquals(-1, myAutocomplete.getWeight("charmeleon"));
+        } finally {
+            wordBank.delete();
+        }
+    }
+
+    @Test
+    public void testAutocompleteBuildTriePrecomputed() throws java.io.IOException {
+        java.io.File wordBank = java.io.File.createTempFile("wordbank", ".txt");
+        try (java.io.FileWriter out = new java.io.FileWriter(wordBank)) {
+            out.write("4\n");
+            out.write("100\tcharizard\n");
+            out.write("50\tcharmander\n");
+            out.write("25\tcharmeleon\n");
+            out.write("75\tblastoise\n");
+        }
+        try {
+            Autocomplete myAutocomplete = new Autocomplete();
+            myAutocomplete.buildTrie(wordBank.getPath(), 2, 2);
+            assertEquals("[100\tcharizard, 75\tblastoise]",
+                    myAutocomplete.getSuggestions("").toString());
+            assertEquals("[100\tcharizard, 50\tcharmander]",
+                    myAutocomplete.getSuggestions("ch").toString());
+            myAutocomplete.incrementWeight("charmeleon", 100);
+            myAutocomplete.addWord("charizard", 1);
+            assertEquals("[125\tcharmeleon, 75\tblastoise]",
+                    myAutocomplete.getSuggestions("").toString());
+            assertEquals("[125\tcharmeleon, 50\tcharmander]",
+                    myAutocomplete.getSuggestions("c").toString());
+            assertEquals("[125\tcharmeleon, 50\tcharmander]",
+                    myAutocomplete.getSuggestions("char").toString());
+        } finally {
+            wordBank.delete();
+        }
+    }
+
+    @Test
+    public void testAutocompleteBuildTrieParallelMatchesSerial() throws java.io.IOException {
+        java.io.File wordBank = java.io.File.createTempFile("wordbank", ".txt");
+        Random random = new Random(121);
+        try (java.io.FileWriter out = new java.io.FileWriter(wordBank)) {
+            out.write("header\n");
+            for (int i = 0; i < 5000; i++) {
+                StringBuilder word = new StringBuilder();
+                int length = 1 + random.nextInt(6);
+                for (int j = 0; j < length; j++) {
+                    word.append((char) ('a' + random.nextInt(26)));
+                }
+                out.write(random.nextInt(1000) + "\t" + word + "\n");
+            }
+        }
+        try {
+            Autocomplete serial = new Autocomplete();
+            serial.buildTrie(wordBank.getPath(), 10);
+            Autocomplete parallel = new Autocomplete();
+            parallel.buildTrieParallel(wordBank.getPath(), 10);
+            assertEquals(serial.countPrefixes(""), parallel.countPrefixes(""));
+            for (char c = 'a'; c <= 'z'; c++) {
+                String prefix = String.valueOf(c);
+                assertEquals(serial.countPrefixes(prefix), parallel.countPrefixes(prefix));
+                assertEquals(serial.getSuggestions(prefix).toString(),
+                        parallel.getSuggestions(prefix).toString());
+                for (ITerm term : serial.getSuggestions(prefix)) {
+                    String word = term.toString().split("\t")[1];
+                    assertEquals(term.getWeight(), parallel.getWeight(word));
+                }
+            }
+        } finally {
+            wordBank.delete();
+        }
+    }
+
+    @Test
+    public void testAutocompleteBuildTrieParallelRejectsInvalidWords() throws java.io.IOException {
+        for (String invalid : Arrays.asList("1up", "pokemon go")) {
+            java.io.File wordBank = java.io.File.createTempFile("wordbank", ".txt");
+            try (java.io.FileWriter out = new java.io.FileWriter(wordBank)) {
+                out.write("header\n");
+                out.write("10\tpikachu\n");
+                out.write("5\t" + invalid + "\n");
+                out.write("7\tzubat\n");
+            }
+            try {
+                Autocomplete parallel = new Autocomplete();
+                try {
+                    parallel.buildTrieParallel(wordBank.getPath(), 10);
+                    fail();
+                } catch (IllegalArgumentException expected) {
+                    // Nothing is kept, and the word index agrees with the trie
+                    assertEquals(0, parallel.countPrefixes(""));
+                    assertEquals(-1, parallel.getWeight("pikachu"));
+                    assertEquals(-1, parallel.getWeight("zubat"));
+                }
+            } finally {
+                wordBank.delete();
+            }
+        }
+    }
+
     @Test
     public void testAutocompleteAddWord() {
         Autocomplete myAutocomplete = new Autocomplete();
@@ -63,6 +269,179 @@ public class AutocompleteTest {
     }
 
 
+    @Test
+    public void testAutocompleteGetWeight() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        assertEquals(100, myAutocomplete.getWeight("charizard"));
+        assertEquals(-1, myAutocomplete.getWeight("char"));
+        assertEquals(-1, myAutocomplete.getWeight("bulbasaur"));
+        myAutocomplete.addWord("charizard", 10);
+        assertEquals(10, myAutocomplete.getWeight("charizard"));
+        assertEquals("[50\tcharmander, 10\tcharizard]",
+                myAutocomplete.getSuggestions("char").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAutocompleteGetWeightNull() {
+        new Autocomplete().getWeight(null);
+    }
+
+    @Test
+    public void testAutocompleteAddWordDuplicate() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        ITerm term = myAutocomplete.getSuggestions("charizard").get(0);
+        myAutocomplete.addWord("charizard", 100);
+        // An identical addWord keeps the term already stored in the trie
+        assertSame(term, myAutocomplete.getSuggestions("charizard").get(0));
+        assertEquals(1, myAutocomplete.countPrefixes(""));
+    }
+
+    @Test
+    public void testAutocompleteInvalidWordNotIndexed() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        try {
+            myAutocomplete.addWord("Charizard", 100);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(-1, myAutocomplete.getWeight("Charizard"));
+    }
+
+    @Test
+    public void testAutocompleteIncrementWeight() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("blastoise", 75);
+        myAutocomplete.numberOfSuggestions = 1;
+        assertEquals(120, myAutocomplete.incrementWeight("charmander", 70));
+        assertEquals(120, myAutocomplete.getWeight("charmander"));
+        assertEquals("[120\tcharmander]", myAutocomplete.getSuggestions("char").toString());
+        assertEquals("[120\tcharmander]", myAutocomplete.getSuggestions("").toString());
+        assertEquals(20, myAutocomplete.incrementWeight("charmander", -100));
+        assertEquals("[100\tcharizard]", myAutocomplete.getSuggestions("").toString());
+        assertEquals("[75\tblastoise]", myAutocomplete.getSuggestions("b").toString());
+        assertEquals(3, myAutocomplete.countPrefixes(""));
+    }
+
+    @Test
+    public void testAutocompleteIncrementWeightAbsent() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        assertEquals(5, myAutocomplete.incrementWeight("squirtle", 5));
+        assertEquals(6, myAutocomplete.incrementWeight("squirtle", 1));
+        assertEquals(1, myAutocomplete.countPrefixes("squirtle"));
+        assertEquals(6, myAutocomplete.getWeight("squirtle"));
+    }
+
+    @Test
+    public void testAutocompleteIncrementWeightNegative() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        try {
+            myAutocomplete.incrementWeight("charizard", -101);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            myAutocomplete.incrementWeight("charizard", Long.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(100, myAutocomplete.getWeight("charizard"));
+        assertEquals("[100\tcharizard]", myAutocomplete.getSuggestions("c").toString());
+    }
+
+    @Test
+    public void testAutocompleteCache() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("blastoise", 75);
+        myAutocomplete.numberOfSuggestions = 2;
+        myAutocomplete.enableCache(100);
+        assertEquals("[100\tcharizard, 50\tcharmander]",
+                myAutocomplete.getSuggestions("ch").toString());
+        assertEquals(2, myAutocomplete.countPrefixes("ch"));
+        List<ITerm> results = myAutocomplete.getSuggestions("ch");
+        assertEquals("[100\tcharizard, 50\tcharmander]", results.toString());
+        // The returned list is the caller's to modify
+        results.clear();
+        assertEquals(2, myAutocomplete.getSuggestions("ch").size());
+        assertEquals(2, myAutocomplete.countPrefixes("ch"));
+        assertEquals(3, myAutocomplete.cacheHitCount());
+        assertEquals(2, myAutocomplete.cacheMissCount());
+        assertEquals(0, myAutocomplete.cacheEvictionCount());
+    }
+
+    @Test
+    public void testAutocompleteCacheInvalidation() {
+        Autocomplete myAutocomplete = new Autocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("blastoise", 75);
+        myAutocomplete.numberOfSuggestions = 1;
+        myAutocomplete.enableCache(100);
+        assertEquals("[100\tcharizard]", myAutocomplete.getSuggestions("").toString());
+        assertEquals("[75\tblastoise]", myAutocomplete.getSuggestions("b").toString());
+        assertEquals(1, myAutocomplete.countPrefixes("c"));
+        myAutocomplete.addWord("chansey", 200);
+        assertEquals("[200\tchansey]", myAutocomplete.getSuggestions("").toString());
+        assertEquals(2, myAutocomplete.countPrefixes("c"));
+        myAutocomplete.incrementWeight("blastoise", 200);
+        assertEquals("[275\tblastoise]", myAutocomplete.getSuggestions("").toString());
+        // Changing the number of suggestions drops the cached lists
+        myAutocomplete.numberOfSuggestions = 2;
+        assertEquals("[275\tblastoise, 200\tchansey]",
+                myAutocomplete.getSuggestions("").toString());
+        myAutocomplete.enableCache(0);
+        assertEquals(0, myAutocomplete.cacheHitCount());
+        assertEquals(3, myAutocomplete.countPrefixes(""));
+    }
+
+    @Test
+    public void testAutocompleteSession() {
+        for (Autocomplete myAutocomplete : Arrays.asList(
+                new Autocomplete(), new Autocomplete(new RadixTrie<>(ITerm::getWeight)))) {
+            myAutocomplete.addWord("charizard", 100);
+            myAutocomplete.addWord("charmander", 50);
+            myAutocomplete.addWord("chansey", 75);
+            myAutocomplete.addWord("blastoise", 60);
+            myAutocomplete.numberOfSuggestions = 2;
+            Autocomplete.Session session = myAutocomplete.startSession();
+            assertEquals(4, session.countPrefixes());
+            session.type('c');
+            session.type('h');
+            session.type('a');
+            session.type('r');
+            assertEquals("char", session.getPrefix());
+            assertEquals(2, session.countPrefixes());
+            assertEquals("[100\tcharizard, 50\tcharmander]", session.getSuggestions().toString());
+            session.type('q');
+            assertEquals(0, session.countPrefixes());
+            assertTrue(session.getSuggestions().isEmpty());
+            assertTrue(session.backspace());
+            assertTrue(session.backspace());
+            assertEquals("[100\tcharizard, 75\tchansey]", session.getSuggestions().toString());
+            myAutocomplete.addWord("chatot", 200);
+            assertEquals("[200\tchatot, 100\tcharizard]", session.getSuggestions().toString());
+            assertTrue(session.backspace());
+            assertTrue(session.backspace());
+            assertTrue(session.backspace());
+            assertFalse(session.backspace());
+            assertEquals(5, session.countPrefixes());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAutocompleteSessionInvalidCharacter() {
+        new Autocomplete().startSession().type('C');
+    }
+
     @Test
     public void testITermByReverseWeightOrder() {
         ITerm myTermOne = new Term("charizard", 100);
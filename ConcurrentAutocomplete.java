@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe {@link IAutocomplete} whose queries never block.
+ * <p>
+ * The word bank is held in an immutable snapshot: a {@link Trie} that is never modified once it
+ * has been published. Readers take the current snapshot with a single volatile read and query
+ * it without locking, so each query sees one consistent version of the word bank. Writers are
+ * serialized by a lock; each one derives a new version with {@link Trie#withPut(CharSequence,
+ * Object)}, which copies only the nodes on the path to the word, and then publishes it.
+ */
+public class ConcurrentAutocomplete implements IAutocomplete {
+
+    private volatile int numberOfSuggestions;
+    private volatile Trie<ITerm> snapshot = new Trie<>(ITerm::getWeight);
+
+    /**
+     * Serializes writers, so that no update is lost between reading and replacing the snapshot.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Adds a new word with its associated weight, publishing a new snapshot
+     *
+     * @param word the word to be added
+     * @param weight the weight of the word
+     */
+    @Override
+    public void addWord(String word, long weight) {
+        ITerm term = new Term(word, weight);
+        synchronized (writeLock) {
+            snapshot = snapshot.withPut(word, term);
+        }
+    }
+
+    /**
+     * Loads the words in the file, publishing the result as one new snapshot. Readers keep
+     * seeing the previous snapshot until the whole file has been loaded.
+     *
+     * @param filename the file to read all the autocomplete data from; each line
+     *                 contains a weight and a word
+     * @param k the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public void buildTrie(String filename, int k) {
+        numberOfSuggestions = k;
+
+        try {
+            synchronized (writeLock) {
+                Trie<ITerm> current = snapshot;
+                if (current.isEmpty()) {
+                    // Nobody else can see this trie yet, so it can be filled in place
+                    Trie<ITerm> loaded = new Trie<>(ITerm::getWeight);
+                    try (Trie<ITerm>.Loader loader = loaded.loader()) {
+                        WordBankParser.parse(filename, (word, weight) -> {
+                            String query = word.toString();
+                            loader.put(query, new Term(query, weight));
+                        });
+                    }
+                    snapshot = loaded;
+                } else {
+                    AtomicReference<Trie<ITerm>> next = new AtomicReference<>(current);
+                    WordBankParser.parse(filename, (word, weight) -> {
+                        String query = word.toString();
+                        next.set(next.get().withPut(query, new Term(query, weight)));
+                    });
+                    snapshot = next.get();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return k the maximum number of suggestions that should be displayed
+     */
+    @Override
+    public int numberSuggestions() {
+        return numberOfSuggestions;
+    }
+
+    /**
+     * @param prefix a string that can contain any character
+     * @return the number of words that start with prefix.
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     */
+    @Override
+    public int countPrefixes(String prefix) {
+        return snapshot.countPrefixes(prefix);
+    }
+
+    /**
+     * @param prefix a string that can contain any character
+     * @return a List containing the numberSuggestions() heaviest ITerm objects with
+     *         query starting with prefix, in descending order of weight, all taken
+     *         from the same snapshot. If no limit was set by buildTrie, all matching
+     *         ITerm objects are returned.
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     */
+    @Override
+    public List<ITerm> getSuggestions(String prefix) {
+        int k = numberOfSuggestions > 0 ? numberOfSuggestions : Integer.MAX_VALUE;
+        return snapshot.topValuesWithPrefix(prefix, k);
+    }
+}
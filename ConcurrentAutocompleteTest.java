@@ -0,0 +1,79 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentAutocompleteTest {
+
+    @Test
+    public void testAddWordAndQuery() {
+        ConcurrentAutocomplete myAutocomplete = new ConcurrentAutocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("charmeleon", 25);
+        myAutocomplete.addWord("blastoise", 50);
+        assertEquals(3, myAutocomplete.countPrefixes("char"));
+        assertEquals("[100\tcharizard, 50\tcharmander, 25\tcharmeleon]",
+                myAutocomplete.getSuggestions("char").toString());
+    }
+
+    @Test
+    public void testAddWordReplacesWeight() {
+        ConcurrentAutocomplete myAutocomplete = new ConcurrentAutocomplete();
+        myAutocomplete.addWord("charizard", 100);
+        myAutocomplete.addWord("charmander", 50);
+        myAutocomplete.addWord("charizard", 10);
+        assertEquals(2, myAutocomplete.countPrefixes("char"));
+        assertEquals("[50\tcharmander, 10\tcharizard]",
+                myAutocomplete.getSuggestions("char").toString());
+    }
+
+    @Test
+    public void testReadersSeeConsistentSnapshots() throws InterruptedException {
+        ConcurrentAutocomplete myAutocomplete = new ConcurrentAutocomplete();
+        int words = 2000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < words; i++) {
+                myAutocomplete.addWord("w" + toLetters(i), i);
+            }
+        });
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            readers.add(new Thread(() -> {
+                int lastCount = 0;
+                while (lastCount < words) {
+                    int count = myAutocomplete.countPrefixes("w");
+                    List<ITerm> top = myAutocomplete.getSuggestions("w");
+                    // Words are added in increasing weight, so a later snapshot never shrinks
+                    // and its heaviest word is always the most recently added one
+                    if (count < lastCount || top.size() < count
+                            || (!top.isEmpty() && top.get(0).getWeight() < count - 1)) {
+                        failure.compareAndSet(null, "count " + count + " after " + lastCount);
+                        return;
+                    }
+                    lastCount = count;
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        writer.start();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(words, myAutocomplete.countPrefixes(""));
+    }
+
+    private static String toLetters(int i) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return letters.toString();
+    }
+}
@@ -0,0 +1,525 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe {@link IHashMap} in the style of the Java 7 {@code ConcurrentHashMap}: the table
+ * is split into segments, each a small chained hash table guarded by its own lock.
+ * <p>
+ * Writes lock only the segment of their key, so writers to different segments never contend.
+ * Reads never lock: bins are published through an {@link AtomicReferenceArray}, and entries have
+ * final keys and hashes and volatile values and links, so {@code get} and {@code containsKey}
+ * always see fully constructed entries.
+ * <p>
+ * A segment grows incrementally. When it passes its threshold it allocates a table of twice the
+ * size, and every later write to the segment first moves a few bins into it, so no single write
+ * pays for rehashing the whole segment. A bin that has been moved is replaced by a forwarding
+ * marker that sends readers to the new table, and the new table replaces the old one once every
+ * bin has been moved.
+ * <p>
+ * Like {@link HashMap}, null keys and null values are permitted. Bulk operations ({@code size},
+ * {@code containsValue}, {@code clear} and iteration) visit the segments one at a time and are
+ * weakly consistent: they reflect each segment as of the moment it was visited.
+ */
+public class ConcurrentHashMap<K, V> implements IHashMap<K, V> {
+
+    // The default initial capacity - MUST be a power of two.
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    // The default number of segments, and so of writers that can proceed at once.
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    // The maximum total capacity, shared among the segments.
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // The maximum number of segments.
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    // The smallest table a segment starts with, so that a lone put does not resize at once.
+    private static final int MIN_SEGMENT_CAPACITY = 2;
+
+    // The load factor used when not specified in constructor.
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    // The number of bins moved to the new table by each write to a growing segment. Any value
+    // of at least two finishes a resize before the segment reaches its next threshold.
+    private static final int TRANSFER_STEP = 4;
+
+    // The segments, indexed by the high bits of the hash.
+    private final Segment<K, V>[] segments;
+
+    // The shift and mask that select the segment of a hash.
+    private final int segmentShift;
+    private final int segmentMask;
+
+    /**
+     * Constructs an empty ConcurrentHashMap with the specified initial capacity, load factor and
+     * concurrency level.
+     *
+     * @param initialCapacity  the initial capacity, shared among the segments
+     * @param loadFactor       the load factor of each segment
+     * @param concurrencyLevel the expected number of concurrent writers, rounded up to a power
+     *                         of two to give the number of segments
+     * @throws IllegalArgumentException if the initial capacity or the concurrency level is
+     *                                  non-positive, or the load factor is non-positive or NaN
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentHashMap(int initialCapacity, float loadFactor, int concurrencyLevel) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal initial capacity: " + initialCapacity);
+        }
+        if (loadFactor <= 0 || Float.isNaN(loadFactor)) {
+            throw new IllegalArgumentException(
+                "Illegal load factor: " + loadFactor);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal concurrency level: " + concurrencyLevel);
+        }
+        if (initialCapacity > MAXIMUM_CAPACITY) {
+            initialCapacity = MAXIMUM_CAPACITY;
+        }
+        if (concurrencyLevel > MAX_SEGMENTS) {
+            concurrencyLevel = MAX_SEGMENTS;
+        }
+
+        // Find a power of 2 >= concurrencyLevel
+        int shift = 0;
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel) {
+            shift++;
+            segmentCount <<= 1;
+        }
+        this.segmentShift = 32 - shift;
+        this.segmentMask = segmentCount - 1;
+
+        int perSegment = (initialCapacity + segmentCount - 1) / segmentCount;
+        int capacity = MIN_SEGMENT_CAPACITY;
+        while (capacity < perSegment) {
+            capacity <<= 1;
+        }
+        int maximumCapacity = Math.max(MIN_SEGMENT_CAPACITY, MAXIMUM_CAPACITY / segmentCount);
+
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(capacity, maximumCapacity, loadFactor);
+        }
+    }
+
+    /**
+     * Constructs an empty ConcurrentHashMap with the specified initial capacity, the default
+     * load factor (0.75) and the default concurrency level (16).
+     *
+     * @param initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is non-positive.
+     */
+    public ConcurrentHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructs an empty ConcurrentHashMap with the default initial capacity (16), the default
+     * load factor (0.75) and the default concurrency level (16).
+     */
+    public ConcurrentHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Applies a supplemental hash function to the hashCode of a key. Both the high bits, which
+     * select the segment, and the low bits, which select the bin within it, must be well
+     * distributed, so this uses a variant of the single-word Wang/Jenkins hash. Null keys always
+     * hash to 0.
+     */
+    private static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode();
+        h += (h << 15) ^ 0xffffcd7d;
+        h ^= (h >>> 10);
+        h += (h << 3);
+        h ^= (h >>> 6);
+        h += (h << 2) + (h << 14);
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<K, V> segmentFor(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    /**
+     * @implSpec This method should run in O(number of segments) time.
+     */
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.count;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment<K, V> segment : segments) {
+            if (segment.count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public V get(Object key) {
+        int hash = hash(key);
+        Node<K, V> node = segmentFor(hash).find(key, hash);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int hash = hash(key);
+        return segmentFor(hash).find(key, hash) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        int hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (Iterator<Map.Entry<K, V>> it = entryIterator(); it.hasNext(); ) {
+            if (Objects.equals(it.next().getValue(), value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent: the entries of each segment are read without locking
+     * when the iteration reaches it, so it never throws
+     * {@link ConcurrentModificationException}. The entries are immutable snapshots, so
+     * {@code setValue} is not supported.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private int nextSegment = 0;
+            private Iterator<Map.Entry<K, V>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && nextSegment < segments.length) {
+                    current = segments[nextSegment++].snapshot().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    @Override
+    public java.util.Set<Map.Entry<K, V>> entrySet() {
+        HashSet<Map.Entry<K, V>> outSet = new HashSet<>();
+        for (Iterator<Map.Entry<K, V>> it = entryIterator(); it.hasNext(); ) {
+            outSet.add(it.next());
+        }
+        return outSet;
+    }
+
+    /**
+     * One independently locked hash table. Only the thread holding the lock modifies a segment;
+     * readers go through {@link #find(Object, int)} without locking.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment<K, V> extends ReentrantLock {
+
+        // The table readers start from. A bin holding a Forward has been moved to nextTable.
+        private volatile AtomicReferenceArray<Node<K, V>> table;
+
+        // The number of mappings in this segment. Written only under the lock.
+        private volatile int count;
+
+        // The table being filled by an ongoing resize, or null. Accessed only under the lock.
+        private AtomicReferenceArray<Node<K, V>> nextTable;
+
+        // The next bin of table to move into nextTable. Accessed only under the lock.
+        private int transferIndex;
+
+        // The count at which to start the next resize.
+        private int threshold;
+
+        private final int initialCapacity;
+        private final int maximumCapacity;
+        private final float loadFactor;
+
+        Segment(int initialCapacity, int maximumCapacity, float loadFactor) {
+            this.initialCapacity = initialCapacity;
+            this.maximumCapacity = maximumCapacity;
+            this.loadFactor = loadFactor;
+            this.table = new AtomicReferenceArray<>(initialCapacity);
+            this.threshold = (int) (initialCapacity * loadFactor);
+        }
+
+        /**
+         * Returns the node with the specified key, or null if there is none. Does not lock.
+         */
+        Node<K, V> find(Object key, int hash) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            while (true) {
+                Node<K, V> node = tab.get(hash & (tab.length() - 1));
+                if (node instanceof Forward) {
+                    tab = ((Forward<K, V>) node).nextTable;
+                    continue;
+                }
+                for (; node != null; node = node.next) {
+                    if (node.hash == hash && Objects.equals(node.key, key)) {
+                        return node;
+                    }
+                }
+                return null;
+            }
+        }
+
+        /**
+         * Returns the table that holds the bin of the specified hash. Requires the lock.
+         */
+        private AtomicReferenceArray<Node<K, V>> tableFor(int hash) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            if (tab.get(hash & (tab.length() - 1)) instanceof Forward) {
+                return nextTable;
+            }
+            return tab;
+        }
+
+        V put(K key, int hash, V value) {
+            lock();
+            try {
+                transferSome();
+                AtomicReferenceArray<Node<K, V>> tab = tableFor(hash);
+                int index = hash & (tab.length() - 1);
+                Node<K, V> first = tab.get(index);
+                for (Node<K, V> node = first; node != null; node = node.next) {
+                    if (node.hash == hash && Objects.equals(node.key, key)) {
+                        V oldValue = node.value;
+                        node.value = value;
+                        return oldValue;
+                    }
+                }
+                tab.set(index, new Node<>(hash, key, value, first));
+                count = count + 1;
+                if (count >= threshold && nextTable == null) {
+                    startResize();
+                }
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove(Object key, int hash) {
+            lock();
+            try {
+                transferSome();
+                AtomicReferenceArray<Node<K, V>> tab = tableFor(hash);
+                int index = hash & (tab.length() - 1);
+                Node<K, V> previous = null;
+                for (Node<K, V> node = tab.get(index); node != null; node = node.next) {
+                    if (node.hash == hash && Objects.equals(node.key, key)) {
+                        // Readers already on node still find the rest of the bin through it
+                        if (previous == null) {
+                            tab.set(index, node.next);
+                        } else {
+                            previous.next = node.next;
+                        }
+                        count = count - 1;
+                        return node.value;
+                    }
+                    previous = node;
+                }
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                table = new AtomicReferenceArray<>(initialCapacity);
+                nextTable = null;
+                count = 0;
+                threshold = (int) (initialCapacity * loadFactor);
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Starts moving the table into one of twice the size. Requires the lock.
+         * <p>
+         * If the current capacity is the maximum, the threshold is set to Integer.MAX_VALUE
+         * instead, which prevents future resizes.
+         */
+        private void startResize() {
+            int oldCapacity = table.length();
+            if (oldCapacity >= maximumCapacity) {
+                threshold = Integer.MAX_VALUE;
+                return;
+            }
+            nextTable = new AtomicReferenceArray<>(oldCapacity * 2);
+            transferIndex = 0;
+            threshold = (int) (oldCapacity * 2 * loadFactor);
+        }
+
+        /**
+         * Moves up to TRANSFER_STEP bins of an ongoing resize, and installs the new table once
+         * every bin has been moved. Requires the lock.
+         */
+        private void transferSome() {
+            if (nextTable == null) {
+                return;
+            }
+            AtomicReferenceArray<Node<K, V>> oldTable = table;
+            int oldCapacity = oldTable.length();
+            for (int step = 0; step < TRANSFER_STEP && transferIndex < oldCapacity; step++) {
+                transferBin(oldTable, transferIndex++);
+            }
+            if (transferIndex == oldCapacity) {
+                table = nextTable;
+                nextTable = null;
+                if (count >= threshold) {
+                    startResize();
+                }
+            }
+        }
+
+        /**
+         * Copies bin index of oldTable into nextTable, where its nodes split between index and
+         * index + oldCapacity in their original order, then forwards the old bin. The old nodes
+         * are left untouched, so readers still walking them are unaffected.
+         */
+        private void transferBin(AtomicReferenceArray<Node<K, V>> oldTable, int index) {
+            int oldCapacity = oldTable.length();
+            Node<K, V> loHead = null;
+            Node<K, V> loTail = null;
+            Node<K, V> hiHead = null;
+            Node<K, V> hiTail = null;
+            for (Node<K, V> node = oldTable.get(index); node != null; node = node.next) {
+                Node<K, V> copy = new Node<>(node.hash, node.key, node.value, null);
+                if ((node.hash & oldCapacity) == 0) {
+                    if (loTail == null) {
+                        loHead = copy;
+                    } else {
+                        loTail.next = copy;
+                    }
+                    loTail = copy;
+                } else {
+                    if (hiTail == null) {
+                        hiHead = copy;
+                    } else {
+                        hiTail.next = copy;
+                    }
+                    hiTail = copy;
+                }
+            }
+            nextTable.set(index, loHead);
+            nextTable.set(index + oldCapacity, hiHead);
+            oldTable.set(index, new Forward<>(nextTable));
+        }
+
+        /**
+         * Returns the entries of this segment, read without locking. Bins that were forwarded
+         * when they were reached are read from the table they were moved to, so every entry is
+         * returned exactly once even if a resize is in progress.
+         */
+        List<Map.Entry<K, V>> snapshot() {
+            List<Map.Entry<K, V>> entries = new ArrayList<>();
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            BitSet forwarded = null;
+            while (tab != null) {
+                AtomicReferenceArray<Node<K, V>> next = null;
+                BitSet nextForwarded = null;
+                int capacity = tab.length();
+                for (int index = 0; index < capacity; index++) {
+                    // Only bins moved out of the previous table need to be read here
+                    if (forwarded != null && !forwarded.get(index & (capacity / 2 - 1))) {
+                        continue;
+                    }
+                    Node<K, V> node = tab.get(index);
+                    if (node instanceof Forward) {
+                        next = ((Forward<K, V>) node).nextTable;
+                        if (nextForwarded == null) {
+                            nextForwarded = new BitSet(capacity);
+                        }
+                        nextForwarded.set(index);
+                        continue;
+                    }
+                    for (; node != null; node = node.next) {
+                        entries.add(new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+                    }
+                }
+                tab = next;
+                forwarded = nextForwarded;
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * A mapping in a bin. The key and hash never change, and the value and link are volatile so
+     * that readers that do not lock see them safely.
+     */
+    private static class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Marks a bin that has been moved to the next table of an ongoing resize.
+     */
+    private static final class Forward<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        Forward(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(0, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentHashMap<String, Integer> myHashMap = new ConcurrentHashMap<String, Integer>();
+        assertNull(myHashMap.put("i", 1));
+        myHashMap.put("s", 2);
+        assertEquals((Integer) 1, myHashMap.put("i", 3));
+        assertEquals((Integer) 3, myHashMap.get("i"));
+        assertNull(myHashMap.get("a"));
+        assertEquals(2, myHashMap.size());
+        assertEquals((Integer) 2, myHashMap.remove("s"));
+        assertNull(myHashMap.remove("s"));
+        assertFalse(myHashMap.containsKey("s"));
+        assertEquals(1, myHashMap.size());
+    }
+
+    @Test
+    public void testNullKeyAndValue() {
+        ConcurrentHashMap<String, Integer> myHashMap = new ConcurrentHashMap<String, Integer>();
+        myHashMap.put(null, 1);
+        myHashMap.put("a", null);
+        assertEquals((Integer) 1, myHashMap.get(null));
+        assertTrue(myHashMap.containsKey(null));
+        assertTrue(myHashMap.containsKey("a"));
+        assertTrue(myHashMap.containsValue(null));
+        assertEquals((Integer) 1, myHashMap.remove(null));
+        assertFalse(myHashMap.containsKey(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalConcurrencyLevel() {
+        new ConcurrentHashMap<String, Integer>(16, 0.75f, 0);
+    }
+
+    @Test
+    public void testPutKeyAndContainsKeyCollision() {
+        ConcurrentHashMap<Object, Integer> myHashMap = new ConcurrentHashMap<Object, Integer>();
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(new Object() {
+                @Override
+                public int hashCode() {
+                    return 5;
+                }
+            });
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            myHashMap.put(keys.get(i), i);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals((Integer) i, myHashMap.get(keys.get(i)));
+        }
+        assertEquals((Integer) 4, myHashMap.remove(keys.get(4)));
+        assertFalse(myHashMap.containsKey(keys.get(4)));
+        assertEquals(9, myHashMap.size());
+    }
+
+    @Test
+    public void testIncrementalResize() {
+        // One segment, so every resize of the map happens in the same segment
+        ConcurrentHashMap<String, Integer> myHashMap =
+                new ConcurrentHashMap<String, Integer>(2, 0.75f, 1);
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+            // Every key must stay visible while bins are being moved
+            for (int check = 0; check <= keyNum; check += 37) {
+                assertEquals((Integer) check, myHashMap.get("Key" + check));
+            }
+            if (keyNum % 50 == 0) {
+                assertEquals(keyNum + 1, myHashMap.entrySet().size());
+            }
+        }
+        for (int keyNum = 0; keyNum < 1000; keyNum += 2) {
+            assertEquals((Integer) keyNum, myHashMap.remove("Key" + keyNum));
+        }
+        assertEquals(500, myHashMap.size());
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            assertEquals(keyNum % 2 == 1, myHashMap.containsKey("Key" + keyNum));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        ConcurrentHashMap<String, Integer> myHashMap = new ConcurrentHashMap<String, Integer>();
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        myHashMap.clear();
+        assertTrue(myHashMap.isEmpty());
+        assertFalse(myHashMap.entryIterator().hasNext());
+        assertNull(myHashMap.get("Key1"));
+    }
+
+    @Test
+    public void testEntrySet() {
+        ConcurrentHashMap<String, Integer> myHashMap = new ConcurrentHashMap<String, Integer>();
+        Set<Map.Entry<String, Integer>> expected = new HashSet<>();
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+            expected.add(new AbstractMap.SimpleImmutableEntry<>("Key" + keyNum, keyNum));
+        }
+        assertEquals(expected, myHashMap.entrySet());
+    }
+
+    @Test
+    public void testConcurrentWritersAndReaders() throws InterruptedException {
+        ConcurrentHashMap<String, Integer> myHashMap = new ConcurrentHashMap<String, Integer>();
+        int threads = 4;
+        int keysPerThread = 5000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < keysPerThread; i++) {
+                    String key = thread + ":" + i;
+                    myHashMap.put(key, i);
+                    // A key this thread wrote must be visible to it however the table grows
+                    if (!Integer.valueOf(i).equals(myHashMap.get(key))) {
+                        failure.compareAndSet(null, "lost " + key);
+                    }
+                    if (i % 2 == 0) {
+                        myHashMap.remove(key);
+                    }
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure.get());
+        assertEquals(threads * keysPerThread / 2, myHashMap.size());
+        assertEquals(threads * keysPerThread / 2, myHashMap.entrySet().size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                assertEquals(i % 2 == 1, myHashMap.containsKey(t + ":" + i));
+            }
+        }
+    }
+}
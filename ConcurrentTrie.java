@@ -0,0 +1,384 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe trie whose writes to different first letters proceed in parallel.
+ * <p>
+ * The keys are striped by their first character: the keys starting with each letter live in a
+ * separate {@link Trie}, guarded by its own {@link ReentrantReadWriteLock}, and the empty key has
+ * a stripe of its own. An operation on a non-empty key or prefix locks exactly one stripe, so
+ * writers only contend when their keys share a first letter, and readers of a stripe proceed
+ * together. Operations on the empty prefix visit the stripes one at a time; each stripe is read
+ * consistently, but writers to other stripes may run in between, so the combined result need not
+ * correspond to a single instant.
+ * <p>
+ * Null keys and values are not permitted, and keys must consist entirely of lowercase letters, as
+ * in {@link Trie}.
+ *
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentTrie<V> implements IRankedTrie<V> {
+
+    /**
+     * One stripe per lowercase letter, plus one for the empty key.
+     */
+    private static final int STRIPES = 27;
+
+    /**
+     * The stripe holding the empty key. It is visited first, since the empty key precedes every
+     * other key in lexicographic order.
+     */
+    private static final int EMPTY_KEY = 26;
+
+    private final Trie<V>[] tries;
+    private final ReentrantReadWriteLock[] locks;
+
+    /**
+     * The total number of mappings, updated while holding the lock of the stripe that changed.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Maps values to their weights, or null if this trie is not weighted.
+     */
+    private final ToLongFunction<? super V> weigher;
+
+    /**
+     * Constructs an empty ConcurrentTrie.
+     */
+    public ConcurrentTrie() {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty weighted ConcurrentTrie.
+     *
+     * @param weigher maps each value to its weight, or null for an unweighted trie
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentTrie(ToLongFunction<? super V> weigher) {
+        this.weigher = weigher;
+        tries = new Trie[STRIPES];
+        locks = new ReentrantReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            tries[i] = new Trie<>(weigher);
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Returns the stripe of the specified key or prefix.
+     *
+     * @throws IllegalArgumentException if key is null or does not start with a lowercase letter
+     */
+    private static int stripe(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        if (key.length() == 0) {
+            return EMPTY_KEY;
+        }
+        char c = key.charAt(0);
+        if (c < 'a' || c > 'z') {
+            throw new IllegalArgumentException("Character must be in the range [a..z]");
+        }
+        return c - 'a';
+    }
+
+    /**
+     * Returns the stripes in lexicographic order of their keys.
+     */
+    private static int[] stripesInOrder() {
+        int[] order = new int[STRIPES];
+        order[0] = EMPTY_KEY;
+        for (int i = 1; i < STRIPES; i++) {
+            order[i] = i - 1;
+        }
+        return order;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if either the specified key or value is null
+     * or if the key contains characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V put(CharSequence key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        int stripe = stripe(key);
+        Lock lock = locks[stripe].writeLock();
+        lock.lock();
+        try {
+            V previousValue = tries[stripe].put(key, value);
+            if (previousValue == null) {
+                size.incrementAndGet();
+            }
+            return previousValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V get(CharSequence key) {
+        int stripe = stripe(key);
+        Lock lock = locks[stripe].readLock();
+        lock.lock();
+        try {
+            return tries[stripe].get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public boolean containsKey(CharSequence key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified value is null
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Lock lock = locks[stripe].readLock();
+            lock.lock();
+            try {
+                if (tries[stripe].containsValue(value)) {
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V remove(CharSequence key) {
+        int stripe = stripe(key);
+        Lock lock = locks[stripe].writeLock();
+        lock.lock();
+        try {
+            V previousValue = tries[stripe].remove(key);
+            if (previousValue != null) {
+                size.decrementAndGet();
+            }
+            return previousValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all of the mappings, one stripe at a time. Mappings added to a stripe after it has
+     * been cleared are kept.
+     */
+    @Override
+    public void clear() {
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Lock lock = locks[stripe].writeLock();
+            lock.lock();
+            try {
+                size.addAndGet(-tries[stripe].size());
+                tries[stripe].clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values whose keys have prefix as a prefix
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the number of entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public int countPrefixes(CharSequence prefix) {
+        if (prefix != null && prefix.length() == 0) {
+            return size.get();
+        }
+        int stripe = stripe(prefix);
+        Lock lock = locks[stripe].readLock();
+        lock.lock();
+        try {
+            return tries[stripe].countPrefixes(prefix);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a list of values of all entries whose key has prefix as a prefix, in lexicographic
+     * order of their keys.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the value of all entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public List<V> allValuesWithPrefix(CharSequence prefix) {
+        if (prefix != null && prefix.length() == 0) {
+            List<V> values = new ArrayList<>();
+            for (int stripe : stripesInOrder()) {
+                Lock lock = locks[stripe].readLock();
+                lock.lock();
+                try {
+                    values.addAll(tries[stripe].allValuesWithPrefix(prefix));
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return values;
+        }
+        int stripe = stripe(prefix);
+        Lock lock = locks[stripe].readLock();
+        lock.lock();
+        try {
+            return tries[stripe].allValuesWithPrefix(prefix);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * For the empty prefix, the {@code k} heaviest values of each stripe are merged.
+     *
+     * @implSpec This method should run in O(H + k * log k) time.
+     */
+    @Override
+    public List<V> topValuesWithPrefix(CharSequence prefix, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (weigher == null) {
+            throw new IllegalStateException("Trie is not weighted");
+        }
+        if (prefix != null && prefix.length() == 0) {
+            List<V> values = new ArrayList<>();
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                Lock lock = locks[stripe].readLock();
+                lock.lock();
+                try {
+                    values.addAll(tries[stripe].topValuesWithPrefix(prefix, k));
+                } finally {
+                    lock.unlock();
+                }
+            }
+            values.sort(Comparator.comparingLong(weigher).reversed());
+            return values.size() > k ? new ArrayList<>(values.subList(0, k)) : values;
+        }
+        int stripe = stripe(prefix);
+        Lock lock = locks[stripe].readLock();
+        lock.lock();
+        try {
+            return tries[stripe].topValuesWithPrefix(prefix, k);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The iterator is weakly consistent: the entries of each stripe are copied under its read
+     * lock when the iteration reaches it, so the iterator never throws
+     * {@link ConcurrentModificationException} and reflects each stripe as of that moment.
+     * Entries are produced in lexicographic order.
+     *
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public Iterator<Map.Entry<CharSequence, V>> entryIterator() {
+        return new Iterator<Map.Entry<CharSequence, V>>() {
+            private final int[] order = stripesInOrder();
+            private int nextStripe = 0;
+            private Iterator<Map.Entry<CharSequence, V>> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && nextStripe < order.length) {
+                    current = copyEntries(order[nextStripe++]).iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public Map.Entry<CharSequence, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    /**
+     * Copies the entries of one stripe in lexicographic order while holding its read lock.
+     */
+    private List<Map.Entry<CharSequence, V>> copyEntries(int stripe) {
+        List<Map.Entry<CharSequence, V>> entries = new ArrayList<>();
+        Lock lock = locks[stripe].readLock();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<CharSequence, V>> it = tries[stripe].entryIterator();
+            while (it.hasNext()) {
+                Map.Entry<CharSequence, V> entry = it.next();
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(
+                        entry.getKey().toString(), entry.getValue()));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,135 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentTrieTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentTrie<String> myTrie = new ConcurrentTrie<>();
+        assertNull(myTrie.put("mudit", "isa"));
+        assertNull(myTrie.put("", "root"));
+        assertEquals("isa", myTrie.put("mudit", "bro bear"));
+        assertEquals("bro bear", myTrie.get("mudit"));
+        assertEquals("root", myTrie.get(""));
+        assertNull(myTrie.get("mud"));
+        assertEquals(2, myTrie.size());
+        assertTrue(myTrie.containsValue("root"));
+        assertEquals("root", myTrie.remove(""));
+        assertNull(myTrie.remove(""));
+        assertEquals(1, myTrie.size());
+        myTrie.clear();
+        assertTrue(myTrie.isEmpty());
+        assertNull(myTrie.get("mudit"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNullKey() {
+        ConcurrentTrie<String> myTrie = new ConcurrentTrie<>();
+        myTrie.put(null, "isa");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutInvalidFirstCharacter() {
+        ConcurrentTrie<String> myTrie = new ConcurrentTrie<>();
+        myTrie.put("Hello", "isa");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutInvalidKey() {
+        ConcurrentTrie<String> myTrie = new ConcurrentTrie<>();
+        myTrie.put("hEllo", "isa");
+    }
+
+    @Test
+    public void testPrefixQueriesAcrossStripes() {
+        ConcurrentTrie<Integer> myTrie = new ConcurrentTrie<>(Integer::longValue);
+        myTrie.put("charizard", 100);
+        myTrie.put("charmander", 50);
+        myTrie.put("blastoise", 75);
+        myTrie.put("bulbasaur", 10);
+        myTrie.put("", 5);
+        assertEquals(2, myTrie.countPrefixes("char"));
+        assertEquals(5, myTrie.countPrefixes(""));
+        assertEquals(Arrays.asList(5, 75, 10, 100, 50), myTrie.allValuesWithPrefix(""));
+        assertEquals(Arrays.asList(75, 10), myTrie.allValuesWithPrefix("b"));
+        assertEquals(Arrays.asList(100, 75, 50), myTrie.topValuesWithPrefix("", 3));
+        assertEquals(Arrays.asList(75, 10), myTrie.topValuesWithPrefix("b", 3));
+    }
+
+    @Test
+    public void testEntryIteratorIsLexicographic() {
+        ConcurrentTrie<Integer> myTrie = new ConcurrentTrie<>();
+        myTrie.put("q", 17);
+        myTrie.put("penguin", 2);
+        myTrie.put("party", 99);
+        myTrie.put("pen", 24);
+        List<String> entries = new ArrayList<>();
+        Iterator<Map.Entry<CharSequence, Integer>> iterator = myTrie.entryIterator();
+        while (iterator.hasNext()) {
+            Map.Entry<CharSequence, Integer> entry = iterator.next();
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        assertEquals(Arrays.asList("party=99", "pen=24", "penguin=2", "q=17"), entries);
+    }
+
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        ConcurrentTrie<Integer> myTrie = new ConcurrentTrie<>(Integer::longValue);
+        int threads = 8;
+        int wordsPerThread = 2000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(new Thread(() -> {
+                // Half the threads share first letters with another thread, half do not
+                char first = (char) ('a' + (thread < threads / 2 ? thread : thread % 2));
+                for (int i = 0; i < wordsPerThread; i++) {
+                    String word = first + toLetters(thread) + "z" + toLetters(i);
+                    myTrie.put(word, i);
+                    if (i % 3 == 0) {
+                        myTrie.remove(word);
+                    }
+                }
+            }));
+        }
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                int total = 0;
+                for (char c = 'a'; c <= 'z'; c++) {
+                    total += myTrie.allValuesWithPrefix(String.valueOf(c)).size();
+                }
+                if (total > threads * wordsPerThread) {
+                    failure.compareAndSet(null, "too many values: " + total);
+                }
+            }
+        });
+        writers.forEach(Thread::start);
+        reader.start();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.join();
+        assertNull(failure.get());
+        int expectedPerThread = wordsPerThread - (wordsPerThread + 2) / 3;
+        assertEquals(threads * expectedPerThread, myTrie.size());
+        assertEquals(myTrie.size(), myTrie.allValuesWithPrefix("").size());
+        // Threads 0, 4 and 6 all write words starting with 'a'
+        assertEquals(3 * expectedPerThread, myTrie.countPrefixes("a"));
+        assertEquals(expectedPerThread, myTrie.countPrefixes("ae"));
+        assertEquals(Arrays.asList(wordsPerThread - 1), myTrie.topValuesWithPrefix("ae", 1));
+    }
+
+    private static String toLetters(int i) {
+        StringBuilder letters = new StringBuilder();
+        do {
+            letters.append((char) ('a' + i % 26));
+            i /= 26;
+        } while (i > 0);
+        return letters.toString();
+    }
+}
@@ -0,0 +1,460 @@
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * A read-only trie flattened into parallel arrays, built once from a finished {@link Trie}.
+ * <p>
+ * Nodes are numbered in preorder, children in alphabetical order, so the subtree of node
+ * {@code i} is exactly the range {@code [i, subtreeEnd[i])}, its first child (if any) is
+ * {@code i + 1}, and the next sibling of a child {@code j} is {@code subtreeEnd[j]}. Values are
+ * stored in the same preorder, which makes the values under a prefix a contiguous slice of
+ * {@code values} and their count a difference of two entries of {@code valueRank}. There are no
+ * per-node objects: a node costs one {@code char}, two {@code int}s and, for a weighted trie, one
+ * {@code long}.
+ * <p>
+ * All mutating methods throw {@link UnsupportedOperationException}.
+ *
+ * @param <V> the type of mapped values
+ */
+public class FrozenTrie<V> implements IRankedTrie<V> {
+
+    /**
+     * The character on the edge into each node. The root's entry is unused.
+     */
+    private final char[] labels;
+
+    /**
+     * The exclusive end of each node's subtree in preorder.
+     */
+    private final int[] subtreeEnd;
+
+    /**
+     * The number of values held by the nodes before each node in preorder, with one extra entry
+     * holding the total. Node {@code i} has a value iff {@code valueRank[i + 1] > valueRank[i]},
+     * and that value is {@code values[valueRank[i]]}.
+     */
+    private final int[] valueRank;
+
+    /**
+     * The values in preorder of their nodes, which is lexicographic order of their keys.
+     */
+    private final Object[] values;
+
+    /**
+     * The maximum weight in each node's subtree, or null if the trie is not weighted.
+     */
+    private final long[] maxWeight;
+
+    /**
+     * Maps values to their weights, or null if this trie is not weighted.
+     */
+    private final ToLongFunction<? super V> weigher;
+
+    /**
+     * Builds a frozen copy of the specified trie. The frozen copy is weighted iff the source is.
+     * Later changes to the source trie are not reflected in the copy.
+     *
+     * @param trie the trie to freeze
+     * @throws IllegalArgumentException if the specified trie is null
+     */
+    public FrozenTrie(Trie<V> trie) {
+        if (trie == null) {
+            throw new IllegalArgumentException();
+        }
+        int nodeCount = countNodes(trie.getRoot());
+        labels = new char[nodeCount];
+        subtreeEnd = new int[nodeCount];
+        valueRank = new int[nodeCount + 1];
+        values = new Object[trie.size()];
+        weigher = trie.getWeigher();
+        maxWeight = weigher == null ? null : new long[nodeCount];
+        copyNodes(trie.getRoot());
+    }
+
+    /**
+     * Returns the number of nodes in the subtree of root. Like {@link #copyNodes(Trie.Node)},
+     * this walks an explicit stack, since recursion would overflow on long keys.
+     */
+    private int countNodes(Trie.Node<V> root) {
+        ArrayDeque<Trie.Node<V>> stack = new ArrayDeque<>();
+        stack.push(root);
+        int count = 0;
+        while (!stack.isEmpty()) {
+            Trie.Node<V> node = stack.pop();
+            count++;
+            for (Trie.Node<V> child : node.getChildren()) {
+                stack.push(child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes root and its subtree in preorder. Level d of the stack holds a node on the path to
+     * the node being written, its index, and the bits of its children not yet written; the
+     * subtree end of a node is known when it is popped.
+     */
+    @SuppressWarnings("unchecked")
+    private void copyNodes(Trie.Node<V> root) {
+        Trie.Node<V>[] path = new Trie.Node[16];
+        int[] pathIndex = new int[16];
+        int[] pending = new int[16];
+        int depth = 0;
+        path[0] = root;
+        pending[0] = root.getChildMask();
+        int next = copyNode(root, (char) 0, 0);
+        while (depth >= 0) {
+            int mask = pending[depth];
+            if (mask == 0) {
+                subtreeEnd[pathIndex[depth]] = next;
+                path[depth--] = null;
+                continue;
+            }
+            pending[depth] = mask & (mask - 1);
+            char label = (char) ('a' + Integer.numberOfTrailingZeros(mask));
+            Trie.Node<V> child = path[depth].getChild(label);
+            int index = next;
+            next = copyNode(child, label, index);
+            if (++depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                pathIndex = Arrays.copyOf(pathIndex, depth * 2);
+                pending = Arrays.copyOf(pending, depth * 2);
+            }
+            path[depth] = child;
+            pathIndex[depth] = index;
+            pending[depth] = child.getChildMask();
+        }
+    }
+
+    /**
+     * Writes the label, maximum weight and value of node at index, given that valueRank[index]
+     * is already set, and returns the index of the next node in preorder.
+     */
+    private int copyNode(Trie.Node<V> node, char label, int index) {
+        int rank = valueRank[index];
+        labels[index] = label;
+        if (maxWeight != null) {
+            maxWeight[index] = node.getMaxWeight();
+        }
+        if (node.hasValue()) {
+            values[rank++] = node.getValue();
+        }
+        valueRank[index + 1] = rank;
+        return index + 1;
+    }
+
+    /**
+     * Returns the edge characters in preorder, for {@link MappedTrie}. The array is not copied
+     * and must not be modified.
+     */
+    char[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the subtree ends in preorder, for {@link MappedTrie}. The array is not copied and
+     * must not be modified.
+     */
+    int[] getSubtreeEnds() {
+        return subtreeEnd;
+    }
+
+    /**
+     * Returns the running value counts in preorder, for {@link MappedTrie}. The array is not
+     * copied and must not be modified.
+     */
+    int[] getValueRanks() {
+        return valueRank;
+    }
+
+    /**
+     * Returns the value with the specified rank in preorder.
+     */
+    V getValue(int rank) {
+        return valueAt(rank);
+    }
+
+    /**
+     * Returns the child of node i reached by character c, or -1 if there is none.
+     */
+    private int child(int i, char c) {
+        if (c < 'a' || c > 'z') {
+            throw new IllegalArgumentException("Character must be in the range [a..z]");
+        }
+        int end = subtreeEnd[i];
+        for (int j = i + 1; j < end; j = subtreeEnd[j]) {
+            if (labels[j] == c) {
+                return j;
+            }
+            if (labels[j] > c) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the node whose key is exactly key, or -1 if there is none.
+     */
+    private int find(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    private boolean hasValue(int node) {
+        return valueRank[node + 1] > valueRank[node];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int rank) {
+        return (V) values[rank];
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V put(CharSequence key, V value) {
+        throw new UnsupportedOperationException("FrozenTrie is read-only");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V get(CharSequence key) {
+        int node = find(key);
+        if (node < 0 || !hasValue(node)) {
+            return null;
+        }
+        return valueAt(valueRank[node]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public boolean containsKey(CharSequence key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified value is null
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        for (Object v : values) {
+            if (v.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V remove(CharSequence key) {
+        throw new UnsupportedOperationException("FrozenTrie is read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("FrozenTrie is read-only");
+    }
+
+    /**
+     * Returns the number of values whose keys have prefix as a prefix
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the number of entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public int countPrefixes(CharSequence prefix) {
+        int node = find(prefix);
+        if (node < 0) {
+            return 0;
+        }
+        return valueRank[subtreeEnd[node]] - valueRank[node];
+    }
+
+    /**
+     * Returns a list of values of all entries whose key has prefix as a prefix, in lexicographic
+     * order of their keys. The values are copied from a contiguous slice of the value array.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the value of all entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H + number of values returned) time.
+     */
+    @Override
+    public List<V> allValuesWithPrefix(CharSequence prefix) {
+        int node = find(prefix);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        int from = valueRank[node];
+        int to = valueRank[subtreeEnd[node]];
+        List<V> result = new ArrayList<>(to - from);
+        for (int rank = from; rank < to; rank++) {
+            result.add(valueAt(rank));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs the same best-first search as {@link Trie#topValuesWithPrefix(CharSequence, int)},
+     * over node indices.
+     *
+     * @implSpec This method should run in O(H + k * log k) time.
+     */
+    @Override
+    public List<V> topValuesWithPrefix(CharSequence prefix, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (weigher == null) {
+            throw new IllegalStateException("Trie is not weighted");
+        }
+        int start = find(prefix);
+        if (start < 0) {
+            return Collections.emptyList();
+        }
+        List<V> result = new ArrayList<>();
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>();
+        frontier.add(new Candidate(start, false, maxWeight[start]));
+        while (!frontier.isEmpty() && result.size() < k) {
+            Candidate best = frontier.poll();
+            int node = best.node;
+            if (best.isValue) {
+                result.add(valueAt(valueRank[node]));
+                continue;
+            }
+            if (hasValue(node)) {
+                frontier.add(new Candidate(node, true,
+                        weigher.applyAsLong(valueAt(valueRank[node]))));
+            }
+            int end = subtreeEnd[node];
+            for (int child = node + 1; child < end; child = subtreeEnd[child]) {
+                frontier.add(new Candidate(child, false, maxWeight[child]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An entry in the frontier of the best-first search: either an unexpanded node, bounded by
+     * the maximum weight in its subtree, or the value held by a node, with its own weight.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final int node;
+        private final boolean isValue;
+        private final long weight;
+
+        Candidate(int node, boolean isValue, long weight) {
+            this.node = node;
+            this.isValue = isValue;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            return Long.compare(that.weight, weight);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entries are produced lazily in lexicographic order by a single scan of the node arrays.
+     * The {@link CharSequence} keys are mutable and should not be referenced directly. Instead,
+     * one should call {@link CharSequence#toString()} on the key to get an immutable reference.
+     *
+     * @implSpec This method should run in O(N) time.
+     * @implSpec This method should use O(H) space.
+     */
+    @Override
+    public Iterator<Map.Entry<CharSequence, V>> entryIterator() {
+        return new Iterator<Map.Entry<CharSequence, V>>() {
+            private final StringBuilder key = new StringBuilder();
+            // openEnds[d] is the subtree end of the node whose label is key.charAt(d)
+            private int[] openEnds = new int[16];
+            private int scan = 0;
+            private int pending = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (pending < 0 && scan < labels.length) {
+                    int node = scan++;
+                    if (node > 0) {
+                        int depth = key.length();
+                        while (depth > 0 && openEnds[depth - 1] <= node) {
+                            depth--;
+                        }
+                        if (depth == openEnds.length) {
+                            openEnds = Arrays.copyOf(openEnds, openEnds.length * 2);
+                        }
+                        openEnds[depth] = subtreeEnd[node];
+                        key.setLength(depth);
+                        key.append(labels[node]);
+                    }
+                    if (hasValue(node)) {
+                        pending = node;
+                    }
+                }
+                return pending >= 0;
+            }
+
+            @Override
+            public Map.Entry<CharSequence, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<CharSequence, V> entry =
+                        new AbstractMap.SimpleImmutableEntry<>(key, valueAt(valueRank[pending]));
+                pending = -1;
+                return entry;
+            }
+        };
+    }
+}
@@ -0,0 +1,114 @@
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+public class FrozenTrieTest {
+
+    private FrozenTrie<Integer> frozen;
+
+    @Before
+    public void setUp() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("apple", 2);
+        myTrie.put("app", 3);
+        myTrie.put("oatmeal", 4);
+        myTrie.put("arvind", 1210);
+        frozen = new FrozenTrie<>(myTrie);
+    }
+
+    @Test
+    public void testGet() {
+        assertEquals(7, frozen.size());
+        assertEquals((Integer) 9, frozen.get("banan"));
+        assertEquals((Integer) 1210, frozen.get("arvind"));
+        assertNull(frozen.get("bana"));
+        assertNull(frozen.get("canada"));
+        assertTrue(frozen.containsKey("app"));
+        assertFalse(frozen.containsKey("ap"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetNullKey() {
+        frozen.get(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInvalidKey() {
+        frozen.get("Hello");
+    }
+
+    @Test
+    public void testContainsValue() {
+        assertTrue(frozen.containsValue(1210));
+        assertFalse(frozen.containsValue(1600));
+    }
+
+    @Test
+    public void testCountPrefixes() {
+        assertEquals(3, frozen.countPrefixes("ba"));
+        assertEquals(3, frozen.countPrefixes("a"));
+        assertEquals(7, frozen.countPrefixes(""));
+        assertEquals(0, frozen.countPrefixes("canada"));
+    }
+
+    @Test
+    public void testAllValuesWithPrefix() {
+        assertEquals(Arrays.asList(7, 9, 1), frozen.allValuesWithPrefix("ba"));
+        assertEquals(Arrays.asList(3, 2, 1210), frozen.allValuesWithPrefix("a"));
+        assertEquals(Collections.emptyList(), frozen.allValuesWithPrefix("canada"));
+    }
+
+    @Test
+    public void testTopValuesWithPrefix() {
+        assertEquals(Arrays.asList(9, 7), frozen.topValuesWithPrefix("ba", 2));
+        assertEquals(Arrays.asList(1210, 9, 7, 4), frozen.topValuesWithPrefix("", 4));
+    }
+
+    @Test
+    public void testEntryIterator() {
+        List<String> keys = new ArrayList<>();
+        Iterator<Map.Entry<CharSequence, Integer>> it = frozen.entryIterator();
+        while (it.hasNext()) {
+            keys.add(it.next().getKey().toString());
+        }
+        assertEquals(Arrays.asList("app", "apple", "arvind", "ban", "banan", "banana", "oatmeal"),
+                keys);
+    }
+
+    @Test
+    public void testDeepKeys() {
+        // Far deeper than the call stack could recurse
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            key.append((char) ('a' + i % 26));
+        }
+        String deep = key.toString();
+        Trie<Integer> trie = new Trie<>(Integer::longValue);
+        trie.put(deep, 5);
+        trie.put(deep.substring(0, 100000), 3);
+        trie.put("b", 1);
+        FrozenTrie<Integer> deepFrozen = new FrozenTrie<>(trie);
+        assertEquals((Integer) 5, deepFrozen.get(deep));
+        assertEquals((Integer) 3, deepFrozen.get(deep.substring(0, 100000)));
+        assertNull(deepFrozen.get(deep.substring(0, 99999)));
+        assertEquals(2, deepFrozen.countPrefixes("abc"));
+        assertEquals(Arrays.asList(3, 5, 1), deepFrozen.allValuesWithPrefix(""));
+        assertEquals(Arrays.asList(5, 3), deepFrozen.topValuesWithPrefix("", 2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPutUnsupported() {
+        frozen.put("mudit", 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveUnsupported() {
+        frozen.remove("ban");
+    }
+}
@@ -1,3 +1,5 @@
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.*;
 
 /**
@@ -20,6 +22,20 @@ public class HashMap<K, V> implements IHashMap<K, V> {
     // The load factor used when not specified in constructor.
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    // The bucket length at which a chain is converted into a balanced tree. With a reasonable
+    // hash function chains this long are vanishingly rare, so trees only appear when many keys
+    // share a hashCode.
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    // The bucket length at or below which a tree is converted back into a chain, on removal or
+    // when a resize splits it. Lower than TREEIFY_THRESHOLD so that a bucket hovering around the
+    // limit does not convert back and forth.
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    // The smallest table for which buckets may be treeified. A long chain in a smaller table is
+    // more likely caused by the table being too small, so the table is resized instead.
+    private static final int MIN_TREEIFY_CAPACITY = 64;
+
     // The load factor for the hash table.
     private final float loadFactor;
 
@@ -38,6 +54,10 @@ public class HashMap<K, V> implements IHashMap<K, V> {
     // The next size value at which to resize (capacity * load factor).
     private int threshold;
 
+    // The sequence number given to the next tree node, which breaks ties between keys that have
+    // the same hash and cannot be ordered otherwise.
+    private long treeSequence;
+
     /**
      * Constructs an empty HashMap with the specified initial capacity and load factor.
      *
@@ -96,16 +116,16 @@ public class HashMap<K, V> implements IHashMap<K, V> {
      * otherwise encounter collisions for hashCodes that do not differ in lower bits. Note: Null
      * keys always map to hash 0, thus index 0.
      * <p>
-     * Additionally, this method truncates the hash to be a valid bucket based on the length
-     * parameter, which represents the number of hash table buckets.
+     * The bucket of a key is the low bits of its spread hash, selected by masking with the number
+     * of hash table buckets minus one. Each entry caches its spread hash, so it never has to be
+     * recomputed.
      */
-    private static int hash(int h, int length) {
+    private static int spread(int h) {
         // This function ensures that hashCodes that differ only by
         // constant multiples at each bit position have a bounded
         // number of collisions (approximately 8 at default load factor).
         h ^= (h >>> 20) ^ (h >>> 12);
-        h ^= (h >>> 7) ^ (h >>> 4);
-        return h & (length - 1);
+        return h ^ (h >>> 7) ^ (h >>> 4);
     }
 
     /**
@@ -130,6 +150,13 @@ public class HashMap<K, V> implements IHashMap<K, V> {
         return myEntry.getKey().equals(k);
     }
 
+    /**
+     * Returns the spread hash of a key, 0 for the null key.
+     */
+    private static int spreadHash(Object key) {
+        return key == null ? 0 : spread(key.hashCode());
+    }
+
     @Override
     public int size() {
         return size;
@@ -137,19 +164,20 @@ public class HashMap<K, V> implements IHashMap<K, V> {
 
     @Override
     public V get(Object key) {
-        // 1. Null keys should hash to index 0. Otherwise, hash the key via hash() (see above)
+        // 1. Null keys should hash to index 0. Otherwise, hash the key via spreadHash()
         // 2. Search the corresponding bucket for the specific key.
         // 3. Return the key's value, or null if it does not exist.
-        int myHash;
-        if (key == null) {
-            myHash = 0;
-        } else {
-            myHash = hash(key.hashCode(), table.length);
-        }
+        int keyHash = spreadHash(key);
+        int myHash = keyHash & (table.length - 1);
         Entry<K,V> myEntry = table[myHash];
+        if (myEntry instanceof TreeNode) {
+            TreeNode<K, V> node = ((TreeNode<K, V>) myEntry).find(keyHash, key);
+            return node == null ? null : node.getValue();
+        }
 
         while (myEntry != null) {
-            if (keyChecker(myEntry, key)) {
+            // Comparing the cached hashes first skips equals for most non-matching entries
+            if (myEntry.hash == keyHash && keyChecker(myEntry, key)) {
                 return myEntry.getValue();
             }
             myEntry = myEntry.next;
@@ -160,17 +188,16 @@ public class HashMap<K, V> implements IHashMap<K, V> {
 
     @Override
     public boolean containsKey(Object key) {
-        // 1. Null keys should hash to index 0. Otherwise, hash the key via hash()
+        // 1. Null keys should hash to index 0. Otherwise, hash the key via spreadHash()
         // 2. Search the bucket for the specific key and return whether it exists.
-        int myHash;
-        if (key == null) {
-            myHash = 0;
-        } else {
-            myHash = hash(key.hashCode(), table.length);
-        }
+        int keyHash = spreadHash(key);
+        int myHash = keyHash & (table.length - 1);
         Entry<K,V> myEntry = table[myHash];
+        if (myEntry instanceof TreeNode) {
+            return ((TreeNode<K, V>) myEntry).find(keyHash, key) != null;
+        }
         while (myEntry != null) {
-            if (keyChecker(myEntry, key)) {
+            if (myEntry.hash == keyHash && keyChecker(myEntry, key)) {
                 return true;
             }
             myEntry = myEntry.next;
@@ -191,37 +218,154 @@ public class HashMap<K, V> implements IHashMap<K, V> {
         // NOTE: you should return the previous value associated with key, or null if there
         // was no mapping for key. (A null return can also indicate that the map previously
         // associated null with key).
-        int myHash;
-        if (key == null) {
-            myHash = 0;
-        } else {
-            myHash = hash(key.hashCode(), table.length);
-        }
+        int keyHash = spreadHash(key);
+        int myHash = keyHash & (table.length - 1);
 
         Entry<K,V> myEntry = table[myHash];
+        if (myEntry instanceof TreeNode) {
+            return putTreeValue(myHash, keyHash, key, value);
+        }
+        int binCount = 0;
         while (myEntry != null) {
-            if (keyChecker(myEntry, key)) {
+            if (myEntry.hash == keyHash && keyChecker(myEntry, key)) {
                 return myEntry.setValue(value);
             }
             myEntry = myEntry.next;
+            binCount++;
         }
-        Entry<K, V> toAdd = new Entry<K,V>(key, value, table[myHash]);
+        Entry<K, V> toAdd = new Entry<K,V>(keyHash, key, value, table[myHash]);
         table[myHash] = toAdd;
         size = size + 1;
+        if (size >= threshold) {
+            resize(table.length * 2);
+        } else if (binCount + 1 >= TREEIFY_THRESHOLD) {
+            treeifyBin(myHash);
+        }
+        return null;
+    }
+
+    /**
+     * Puts a mapping into the tree bucket at the specified index.
+     */
+    private V putTreeValue(int index, int keyHash, K key, V value) {
+        TreeNode<K, V> root = (TreeNode<K, V>) table[index];
+        TreeNode<K, V> existing = root.find(keyHash, key);
+        if (existing != null) {
+            return existing.setValue(value);
+        }
+        TreeNode<K, V> node = new TreeNode<>(keyHash, key, value, treeSequence++);
+        // Link the node into the bucket's list just after the root
+        node.prev = root;
+        node.next = root.next;
+        if (root.next != null) {
+            ((TreeNode<K, V>) root.next).prev = node;
+        }
+        root.next = node;
+        moveRootToFront(table, index, TreeNode.insert(root, node));
+        size = size + 1;
         if (size >= threshold) {
             resize(table.length * 2);
         }
         return null;
     }
 
+    /**
+     * Replaces the chain at the specified index with a balanced tree of the same entries, or
+     * resizes instead if the table is still small.
+     */
+    private void treeifyBin(int index) {
+        if (table.length < MIN_TREEIFY_CAPACITY) {
+            resize(table.length * 2);
+            return;
+        }
+        TreeNode<K, V> head = null;
+        TreeNode<K, V> tail = null;
+        for (Entry<K, V> entry = table[index]; entry != null; entry = entry.next) {
+            TreeNode<K, V> node = new TreeNode<>(entry.hash, entry.getKey(), entry.getValue(),
+                    treeSequence++);
+            node.prev = tail;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+        buildTree(table, index, head);
+    }
+
+    /**
+     * Builds a balanced tree over the list of tree nodes starting at head, and stores the list at
+     * the specified index of tab with the tree's root first.
+     */
+    private static <K, V> void buildTree(Entry<K, V>[] tab, int index, TreeNode<K, V> head) {
+        tab[index] = head;
+        TreeNode<K, V> root = null;
+        for (Entry<K, V> entry = head; entry != null; entry = entry.next) {
+            TreeNode<K, V> node = (TreeNode<K, V>) entry;
+            node.left = null;
+            node.right = null;
+            node.update();
+            root = TreeNode.insert(root, node);
+        }
+        moveRootToFront(tab, index, root);
+    }
+
+    /**
+     * Moves root to the front of the list of tree nodes at the specified index of tab, so that
+     * the bucket's first entry is always the root of its tree.
+     */
+    private static <K, V> void moveRootToFront(Entry<K, V>[] tab, int index, TreeNode<K, V> root) {
+        TreeNode<K, V> head = (TreeNode<K, V>) tab[index];
+        if (root == head) {
+            return;
+        }
+        root.prev.next = root.next;
+        if (root.next != null) {
+            ((TreeNode<K, V>) root.next).prev = root.prev;
+        }
+        root.prev = null;
+        root.next = head;
+        head.prev = root;
+        tab[index] = root;
+    }
+
+    /**
+     * Returns a chain of plain entries holding the mappings of the list of tree nodes starting
+     * at head, in the same order.
+     */
+    private static <K, V> Entry<K, V> untreeify(TreeNode<K, V> head) {
+        Entry<K, V> first = null;
+        Entry<K, V> last = null;
+        for (Entry<K, V> node = head; node != null; node = node.next) {
+            Entry<K, V> entry = new Entry<>(node.hash, node.getKey(), node.getValue(), null);
+            if (last == null) {
+                first = entry;
+            } else {
+                last.next = entry;
+            }
+            last = entry;
+        }
+        return first;
+    }
+
     /**
      * Rehashes the contents of this map into a new array with a larger capacity. This method
      * should be called automatically when the number of keys in this map reaches its threshold.
      * <p>
      * If current capacity is MAXIMUM_CAPACITY, this method should not resize the map, but instead
      * set threshold to Integer.MAX_VALUE. This has the effect of preventing future calls.
+     * <p>
+     * The existing entries are relinked rather than copied, so no garbage is produced. When the
+     * capacity doubles, each bucket splits into a "lo" list that stays at the same index and a
+     * "hi" list that moves up by the old capacity, chosen by the one extra bit of the cached hash
+     * that the new capacity exposes. Both lists keep the entries in their original order, and no
+     * hashCode is recomputed.
+     * <p>
+     * Growing by more than a factor of two, as {@link #ensureCapacity(int)} does, moves each
+     * entry straight to its final bucket instead.
      *
-     * @param newCapacity the new capacity, MUST be a power of two; must be greater than current
+     * @param newCapacity the new capacity, MUST be a larger power of two than the current
      *                    capacity unless current capacity is MAXIMUM_CAPACITY (in which case
      *                    value is irrelevant).
      *                    However, there is no need to invoke an exception if an invalid capacity
@@ -230,52 +374,207 @@ public class HashMap<K, V> implements IHashMap<K, V> {
      *                    you can guarantee that
      *                    invalid capacities are not passed in.
      */
+    @SuppressWarnings("unchecked")
     void resize(int newCapacity) {
-        // 1. Save the old hash table.
-        // 2. Instantiate a new hash table (unless, of course, the current
-        //    capacity is MAXIMUM_CAPACITY).
-        // 3. Re-hash the old table into it. That is, re-hash all the keys as if you were
-        //    reinserting them, in order from index 0 to the end, from the head of the linked
-        //    list to its end. Be careful when hashing null keys!
-        // 4. Set the new table threshold.
-
-        // NOTE: You do not need to worry about resizing down.
         if (table.length == MAXIMUM_CAPACITY) {
             threshold = Integer.MAX_VALUE;
             return;
         }
-        Iterator<Map.Entry<K,V>> myIterator = entryIterator();
-        Entry<K,V>[] newTable = new Entry[newCapacity];
+        Entry<K, V>[] oldTable = table;
+        int oldCapacity = oldTable.length;
+        Entry<K, V>[] newTable = new Entry[newCapacity];
+        if (newCapacity != oldCapacity * 2) {
+            rebucket(oldTable, newTable);
+            table = newTable;
+            threshold = (int) (table.length * loadFactor);
+            return;
+        }
 
-        while (myIterator.hasNext()) {
-            Map.Entry<K,V> next = myIterator.next();
-            int myHash;
-            if (next.getKey() == null) {
-                myHash = 0;
-            } else {
-                myHash = hash(next.getKey().hashCode(), newCapacity);
+        for (int index = 0; index < oldCapacity; index++) {
+            if (oldTable[index] instanceof TreeNode) {
+                splitTree(oldTable, newTable, index);
+                continue;
+            }
+            Entry<K, V> loHead = null;
+            Entry<K, V> loTail = null;
+            Entry<K, V> hiHead = null;
+            Entry<K, V> hiTail = null;
+            Entry<K, V> next;
+            for (Entry<K, V> current = oldTable[index]; current != null; current = next) {
+                next = current.next;
+                if ((current.hash & oldCapacity) == 0) {
+                    if (loTail == null) {
+                        loHead = current;
+                    } else {
+                        loTail.next = current;
+                    }
+                    loTail = current;
+                } else {
+                    if (hiTail == null) {
+                        hiHead = current;
+                    } else {
+                        hiTail.next = current;
+                    }
+                    hiTail = current;
+                }
             }
-            Entry<K,V> toAdd = new Entry<K,V>(next.getKey(), next.getValue(), newTable[myHash]);
-            newTable[myHash] = toAdd;
+            if (loTail != null) {
+                loTail.next = null;
+            }
+            if (hiTail != null) {
+                hiTail.next = null;
+            }
+            newTable[index] = loHead;
+            newTable[index + oldCapacity] = hiHead;
         }
         table = newTable;
         threshold = (int) (table.length * loadFactor);
     }
 
+    /**
+     * Moves every entry of oldTable into the bucket {@code hash & (newTable.length - 1)} of
+     * newTable, which may have any larger capacity, keeping the entries of each bucket in their
+     * original order. While entries are moved, each new bucket holds the tail of a circular list,
+     * whose next entry is the head, so that appending needs no extra array. A bucket that came
+     * from a tree is then either rebuilt as a tree or, if small enough, made a plain chain.
+     */
+    private static <K, V> void rebucket(Entry<K, V>[] oldTable, Entry<K, V>[] newTable) {
+        int mask = newTable.length - 1;
+        for (Entry<K, V> bucket : oldTable) {
+            Entry<K, V> next;
+            for (Entry<K, V> current = bucket; current != null; current = next) {
+                next = current.next;
+                int index = current.hash & mask;
+                Entry<K, V> tail = newTable[index];
+                if (tail == null) {
+                    current.next = current;
+                } else {
+                    current.next = tail.next;
+                    tail.next = current;
+                }
+                newTable[index] = current;
+            }
+        }
+        for (int index = 0; index < newTable.length; index++) {
+            Entry<K, V> tail = newTable[index];
+            if (tail == null) {
+                continue;
+            }
+            Entry<K, V> head = tail.next;
+            tail.next = null;
+            newTable[index] = head;
+            if (!(head instanceof TreeNode)) {
+                continue;
+            }
+            int count = 0;
+            TreeNode<K, V> prev = null;
+            for (Entry<K, V> entry = head; entry != null; entry = entry.next) {
+                TreeNode<K, V> node = (TreeNode<K, V>) entry;
+                node.prev = prev;
+                prev = node;
+                count++;
+            }
+            if (count <= UNTREEIFY_THRESHOLD) {
+                newTable[index] = untreeify((TreeNode<K, V>) head);
+            } else {
+                buildTree(newTable, index, (TreeNode<K, V>) head);
+            }
+        }
+    }
+
+    /**
+     * Splits the tree bucket at the specified index of oldTable into its "lo" and "hi" halves in
+     * newTable, which has twice the capacity. A half that is small enough becomes a plain chain;
+     * otherwise its tree is rebuilt from the relinked nodes.
+     */
+    private static <K, V> void splitTree(Entry<K, V>[] oldTable, Entry<K, V>[] newTable,
+                                         int index) {
+        int oldCapacity = oldTable.length;
+        TreeNode<K, V> loHead = null;
+        TreeNode<K, V> loTail = null;
+        TreeNode<K, V> hiHead = null;
+        TreeNode<K, V> hiTail = null;
+        int loCount = 0;
+        int hiCount = 0;
+        Entry<K, V> next;
+        for (Entry<K, V> entry = oldTable[index]; entry != null; entry = next) {
+            next = entry.next;
+            TreeNode<K, V> node = (TreeNode<K, V>) entry;
+            node.next = null;
+            if ((node.hash & oldCapacity) == 0) {
+                node.prev = loTail;
+                if (loTail == null) {
+                    loHead = node;
+                } else {
+                    loTail.next = node;
+                }
+                loTail = node;
+                loCount++;
+            } else {
+                node.prev = hiTail;
+                if (hiTail == null) {
+                    hiHead = node;
+                } else {
+                    hiTail.next = node;
+                }
+                hiTail = node;
+                hiCount++;
+            }
+        }
+        if (loCount <= UNTREEIFY_THRESHOLD) {
+            newTable[index] = untreeify(loHead);
+        } else {
+            buildTree(newTable, index, loHead);
+        }
+        if (hiCount <= UNTREEIFY_THRESHOLD) {
+            newTable[index + oldCapacity] = untreeify(hiHead);
+        } else {
+            buildTree(newTable, index + oldCapacity, hiHead);
+        }
+    }
+
+    /**
+     * Grows the table, if necessary, so that it can hold expectedSize mappings without resizing.
+     * Calling this before a bulk load skips every intermediate resize.
+     *
+     * @param expectedSize the number of mappings the map is expected to hold
+     */
+    @SuppressWarnings("unchecked")
+    public void ensureCapacity(int expectedSize) {
+        int capacity = table.length;
+        while (capacity < MAXIMUM_CAPACITY && (int) (capacity * loadFactor) <= expectedSize) {
+            capacity <<= 1;
+        }
+        if (capacity == table.length) {
+            return;
+        }
+        if (size == 0) {
+            table = new Entry[capacity];
+            threshold = (int) (capacity * loadFactor);
+            return;
+        }
+        resize(capacity);
+    }
+
     @Override
     public V remove(Object key) {
         // Note that you should not resize down.
-        int myHash;
-        if (key == null) {
-            myHash = 0;
-        } else {
-            myHash = hash(key.hashCode(), table.length);
-        }
+        int keyHash = spreadHash(key);
+        int myHash = keyHash & (table.length - 1);
         Entry<K, V> current = table[myHash];
         Entry<K, V> previous = null;
+        if (current instanceof TreeNode) {
+            TreeNode<K, V> node = ((TreeNode<K, V>) current).find(keyHash, key);
+            if (node == null) {
+                return null;
+            }
+            removeTreeNode(myHash, node);
+            size--;
+            return node.getValue();
+        }
 
         while (current != null) {
-            if (keyChecker(current, key)) {
+            if (current.hash == keyHash && keyChecker(current, key)) {
                 if (previous == null) {
                     table[myHash] = current.next;
                 } else {
@@ -290,6 +589,32 @@ public class HashMap<K, V> implements IHashMap<K, V> {
         return null;
     }
 
+    /**
+     * Removes node from the tree bucket at the specified index, turning the bucket back into a
+     * chain if it has become small enough.
+     */
+    private void removeTreeNode(int index, TreeNode<K, V> node) {
+        TreeNode<K, V> root = (TreeNode<K, V>) table[index];
+        TreeNode<K, V> next = (TreeNode<K, V>) node.next;
+        if (node.prev == null) {
+            table[index] = next;
+        } else {
+            node.prev.next = next;
+        }
+        if (next != null) {
+            next.prev = node.prev;
+        }
+        root = TreeNode.delete(root, node);
+        if (root == null) {
+            return;
+        }
+        if (root.count <= UNTREEIFY_THRESHOLD) {
+            table[index] = untreeify((TreeNode<K, V>) table[index]);
+        } else {
+            moveRootToFront(table, index, root);
+        }
+    }
+
     @Override
     public boolean containsValue(Object value) {
         // Perform a naive search over each entry of each bucket of the hash table
@@ -375,13 +700,17 @@ public class HashMap<K, V> implements IHashMap<K, V> {
         private V value;
         Entry<K, V> next;
 
+        // The spread hash of the key, so that probes and resizes need not call hashCode.
+        final int hash;
+
         /**
          * Creates new entry.
          */
-        Entry(K k, V v, Entry<K, V> n) {
+        Entry(int h, K k, V v, Entry<K, V> n) {
             value = v;
             next = n;
             key = k;
+            hash = h;
         }
 
         @Override
@@ -420,4 +749,257 @@ public class HashMap<K, V> implements IHashMap<K, V> {
         }
 
     }
+
+    /**
+     * An entry of a bucket that has been converted into a balanced tree.
+     * <p>
+     * The nodes of a tree bucket are still linked through {@code next}, so iteration treats them
+     * like a chain, with the root of the tree always first. They are also linked backwards
+     * through {@code prev}, so a node can be unlinked without searching for its predecessor. The
+     * tree is an AVL tree ordered by hash, then by class name for keys of different classes, then
+     * by {@code compareTo} for keys of the same {@link Comparable} class, and finally by the
+     * sequence number each node receives on creation.
+     */
+    static final class TreeNode<K, V> extends Entry<K, V> {
+        final long sequence;
+        TreeNode<K, V> prev;
+        TreeNode<K, V> left;
+        TreeNode<K, V> right;
+        int height;
+        int count;
+
+        TreeNode(int hash, K key, V value, long sequence) {
+            super(hash, key, value, null);
+            this.sequence = sequence;
+            update();
+        }
+
+        /**
+         * Recomputes the height and subtree size of this node from its children.
+         */
+        void update() {
+            height = 1 + Math.max(height(left), height(right));
+            count = 1 + count(left) + count(right);
+        }
+
+        private static int height(TreeNode<?, ?> node) {
+            return node == null ? 0 : node.height;
+        }
+
+        private static int count(TreeNode<?, ?> node) {
+            return node == null ? 0 : node.count;
+        }
+
+        /**
+         * Returns the node with the specified key and spread hash in the subtree rooted at this
+         * node, or null if there is none. Takes O(log n) steps unless many keys share the hash
+         * and cannot be ordered by compareTo, in which case both subtrees may need to be
+         * searched. The class name order of the tree is not used, since keys of different
+         * classes may still be equal.
+         */
+        TreeNode<K, V> find(int hash, Object key) {
+            return find(hash, key, comparableClassFor(key));
+        }
+
+        private TreeNode<K, V> find(int hash, Object key, Class<?> keyClass) {
+            TreeNode<K, V> node = this;
+            while (node != null) {
+                if (node.hash == hash && Objects.equals(node.getKey(), key)) {
+                    return node;
+                }
+                int cmp = searchOrder(hash, key, keyClass, node);
+                if (cmp < 0) {
+                    node = node.left;
+                } else if (cmp > 0) {
+                    node = node.right;
+                } else {
+                    if (node.right != null) {
+                        TreeNode<K, V> found = node.right.find(hash, key, keyClass);
+                        if (found != null) {
+                            return found;
+                        }
+                    }
+                    node = node.left;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares a key with the key of node by hash and, for keys of the same Comparable class,
+         * compareTo. Returns 0 if these do not order the two keys, in which case a key equal to
+         * the one sought may be on either side of node.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static int searchOrder(int hash, Object key, Class<?> keyClass,
+                                       TreeNode<?, ?> node) {
+            if (hash != node.hash) {
+                return hash < node.hash ? -1 : 1;
+            }
+            Object nodeKey = node.getKey();
+            if (keyClass != null && nodeKey != null && nodeKey.getClass() == keyClass) {
+                return ((Comparable) key).compareTo(nodeKey);
+            }
+            return 0;
+        }
+
+        /**
+         * Compares a key with the key of node by hash, class name and, for keys of the same
+         * Comparable class, compareTo. Returns 0 if these do not order the two keys. The class
+         * name only breaks ties when placing nodes, like the sequence number; it is not
+         * consistent with equals, so lookups use {@link #searchOrder} instead.
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static int compareKeys(int hash, Object key, Class<?> keyClass,
+                                       TreeNode<?, ?> node) {
+            if (hash != node.hash) {
+                return hash < node.hash ? -1 : 1;
+            }
+            Object nodeKey = node.getKey();
+            Class<?> nodeClass = nodeKey == null ? null : nodeKey.getClass();
+            Class<?> ownClass = key == null ? null : key.getClass();
+            if (ownClass != nodeClass) {
+                String ownName = ownClass == null ? "" : ownClass.getName();
+                String nodeName = nodeClass == null ? "" : nodeClass.getName();
+                return ownName.compareTo(nodeName);
+            }
+            if (keyClass != null) {
+                return ((Comparable) key).compareTo(nodeKey);
+            }
+            return 0;
+        }
+
+        /**
+         * Returns the class of x if it is of the form "class C implements Comparable&lt;C&gt;",
+         * else null.
+         */
+        private static Class<?> comparableClassFor(Object x) {
+            if (!(x instanceof Comparable)) {
+                return null;
+            }
+            Class<?> c = x.getClass();
+            if (c == String.class) {
+                return c;
+            }
+            for (Type type : c.getGenericInterfaces()) {
+                if (type instanceof ParameterizedType) {
+                    ParameterizedType p = (ParameterizedType) type;
+                    Type[] arguments = p.getActualTypeArguments();
+                    if (p.getRawType() == Comparable.class && arguments.length == 1
+                            && arguments[0] == c) {
+                        return c;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compares two distinct nodes in the total order of the tree.
+         */
+        private static int compareNodes(TreeNode<?, ?> a, Class<?> keyClass, TreeNode<?, ?> b) {
+            int cmp = compareKeys(a.hash, a.getKey(), keyClass, b);
+            return cmp != 0 ? cmp : Long.compare(a.sequence, b.sequence);
+        }
+
+        /**
+         * Inserts node into the subtree rooted at root and returns the new root of the subtree.
+         */
+        static <K, V> TreeNode<K, V> insert(TreeNode<K, V> root, TreeNode<K, V> node) {
+            return insert(root, node, comparableClassFor(node.getKey()));
+        }
+
+        private static <K, V> TreeNode<K, V> insert(TreeNode<K, V> root, TreeNode<K, V> node,
+                                                    Class<?> keyClass) {
+            if (root == null) {
+                return node;
+            }
+            if (compareNodes(node, keyClass, root) < 0) {
+                root.left = insert(root.left, node, keyClass);
+            } else {
+                root.right = insert(root.right, node, keyClass);
+            }
+            return balance(root);
+        }
+
+        /**
+         * Deletes node from the subtree rooted at root and returns the new root of the subtree.
+         */
+        static <K, V> TreeNode<K, V> delete(TreeNode<K, V> root, TreeNode<K, V> node) {
+            return delete(root, node, comparableClassFor(node.getKey()));
+        }
+
+        private static <K, V> TreeNode<K, V> delete(TreeNode<K, V> root, TreeNode<K, V> node,
+                                                    Class<?> keyClass) {
+            if (root == node) {
+                if (root.left == null) {
+                    return root.right;
+                }
+                if (root.right == null) {
+                    return root.left;
+                }
+                TreeNode<K, V> successor = root.right;
+                while (successor.left != null) {
+                    successor = successor.left;
+                }
+                successor.right = deleteMin(root.right);
+                successor.left = root.left;
+                return balance(successor);
+            }
+            if (compareNodes(node, keyClass, root) < 0) {
+                root.left = delete(root.left, node, keyClass);
+            } else {
+                root.right = delete(root.right, node, keyClass);
+            }
+            return balance(root);
+        }
+
+        private static <K, V> TreeNode<K, V> deleteMin(TreeNode<K, V> root) {
+            if (root.left == null) {
+                return root.right;
+            }
+            root.left = deleteMin(root.left);
+            return balance(root);
+        }
+
+        /**
+         * Restores the AVL balance of root, whose subtrees are balanced and differ in height by
+         * at most two, and returns the new root of the subtree.
+         */
+        private static <K, V> TreeNode<K, V> balance(TreeNode<K, V> root) {
+            root.update();
+            int factor = height(root.left) - height(root.right);
+            if (factor > 1) {
+                if (height(root.left.left) < height(root.left.right)) {
+                    root.left = rotateLeft(root.left);
+                }
+                return rotateRight(root);
+            }
+            if (factor < -1) {
+                if (height(root.right.right) < height(root.right.left)) {
+                    root.right = rotateRight(root.right);
+                }
+                return rotateLeft(root);
+            }
+            return root;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateLeft(TreeNode<K, V> root) {
+            TreeNode<K, V> pivot = root.right;
+            root.right = pivot.left;
+            pivot.left = root;
+            root.update();
+            pivot.update();
+            return pivot;
+        }
+
+        private static <K, V> TreeNode<K, V> rotateRight(TreeNode<K, V> root) {
+            TreeNode<K, V> pivot = root.left;
+            root.left = pivot.right;
+            pivot.right = root;
+            root.update();
+            pivot.update();
+            return pivot;
+        }
+    }
 }
@@ -143,6 +143,368 @@ public class HashMapTest {
         assertEquals(20, myHashMap.size());
     }
 
+    @Test
+    public void testResizeKeepsBucketOrder() {
+        HashMap<Object, Integer> myHashMap = new HashMap<Object, Integer>(2);
+        List<Object> keys = new ArrayList<>();
+        for (int keyNum = 0; keyNum < 40; keyNum++) {
+            // At most seven keys per hashCode, so no bucket is long enough to be treeified
+            int hash = keyNum % 6;
+            keys.add(new Object() {
+                @Override
+                public int hashCode() {
+                    return hash;
+                }
+            });
+            myHashMap.put(keys.get(keyNum), keyNum);
+        }
+        // Entries are inserted at the head of a bucket, so each bucket lists its keys newest
+        // first; relinking must not reverse that order
+        for (HashMap.Entry<Object, Integer> bucket : myHashMap.getTable()) {
+            int previous = Integer.MAX_VALUE;
+            for (HashMap.Entry<Object, Integer> entry = bucket; entry != null; entry = entry.next) {
+                assertTrue(entry.getValue() < previous);
+                previous = entry.getValue();
+            }
+        }
+        for (int keyNum = 0; keyNum < 40; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get(keys.get(keyNum)));
+        }
+    }
+
+    @Test
+    public void testResizeRelinksEntries() {
+        HashMap<String, Integer> myHashMap = new HashMap<String, Integer>();
+        myHashMap.put("Key", 1);
+        HashMap.Entry<String, Integer> before = null;
+        for (HashMap.Entry<String, Integer> bucket : myHashMap.getTable()) {
+            if (bucket != null) {
+                before = bucket;
+            }
+        }
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        boolean found = false;
+        for (HashMap.Entry<String, Integer> bucket : myHashMap.getTable()) {
+            for (HashMap.Entry<String, Integer> entry = bucket; entry != null; entry = entry.next) {
+                found |= entry == before;
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void testEnsureCapacity() {
+        HashMap<String, Integer> myHashMap = new HashMap<String, Integer>();
+        myHashMap.ensureCapacity(1000);
+        int capacity = myHashMap.getTable().length;
+        assertEquals(2048, capacity);
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        assertEquals(capacity, myHashMap.getTable().length);
+        myHashMap.ensureCapacity(10);
+        assertEquals(capacity, myHashMap.getTable().length);
+    }
+
+    @Test
+    public void testEnsureCapacityWithEntries() {
+        HashMap<String, Integer> myHashMap = new HashMap<String, Integer>();
+        for (int keyNum = 0; keyNum < 10; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        myHashMap.ensureCapacity(100);
+        assertEquals(256, myHashMap.getTable().length);
+        for (int keyNum = 0; keyNum < 10; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get("Key" + keyNum));
+        }
+        assertEquals(10, myHashMap.size());
+    }
+
+    @Test
+    public void testEnsureCapacityRebucketsInOnePass() {
+        HashMap<Object, Integer> myHashMap = new HashMap<Object, Integer>(16);
+        List<Object> keys = new ArrayList<>();
+        for (int keyNum = 0; keyNum < 10; keyNum++) {
+            // Several keys per hash code, so that the new buckets hold more than one entry
+            int hash = (keyNum % 4) * 16;
+            keys.add(new Object() {
+                @Override
+                public int hashCode() {
+                    return hash;
+                }
+            });
+            myHashMap.put(keys.get(keyNum), keyNum);
+        }
+        Set<HashMap.Entry<Object, Integer>> before =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        for (HashMap.Entry<Object, Integer> bucket : myHashMap.getTable()) {
+            for (HashMap.Entry<Object, Integer> entry = bucket; entry != null; entry = entry.next) {
+                before.add(entry);
+            }
+        }
+        myHashMap.ensureCapacity(700);
+        HashMap.Entry<Object, Integer>[] table = myHashMap.getTable();
+        assertEquals(1024, table.length);
+        for (int index = 0; index < table.length; index++) {
+            int previous = Integer.MAX_VALUE;
+            for (HashMap.Entry<Object, Integer> entry = table[index]; entry != null;
+                    entry = entry.next) {
+                // Each entry is relinked, not copied, into the bucket of its hash, and the
+                // newest-first order within a bucket is kept
+                assertTrue(before.remove(entry));
+                assertEquals(index, entry.hash & (table.length - 1));
+                assertTrue(entry.getValue() < previous);
+                previous = entry.getValue();
+            }
+        }
+        assertTrue(before.isEmpty());
+        for (int keyNum = 0; keyNum < 10; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get(keys.get(keyNum)));
+        }
+    }
+
+    @Test
+    public void testEnsureCapacityKeepsTreeBuckets() {
+        HashMap<CollidingKey, Integer> myHashMap = new HashMap<CollidingKey, Integer>(64);
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            myHashMap.put(new CollidingKey(keyNum), keyNum);
+        }
+        myHashMap.ensureCapacity(10000);
+        HashMap.Entry<CollidingKey, Integer>[] table = myHashMap.getTable();
+        assertEquals(16384, table.length);
+        HashMap.Entry<CollidingKey, Integer> bucket = null;
+        for (HashMap.Entry<CollidingKey, Integer> entry : table) {
+            if (entry != null) {
+                bucket = entry;
+            }
+        }
+        assertTrue(bucket instanceof HashMap.TreeNode);
+        assertEquals(100, bucketLength(bucket));
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get(new CollidingKey(keyNum)));
+        }
+        assertEquals((Integer) 7, myHashMap.remove(new CollidingKey(7)));
+        assertEquals(99, myHashMap.size());
+    }
+
+    /**
+     * A key whose hashCode is a constant, counting the calls to equals.
+     */
+    private static final class CollidingKey implements Comparable<CollidingKey> {
+        private static int equalsCalls;
+        private final int id;
+
+        CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            equalsCalls++;
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int compareTo(CollidingKey that) {
+            return Integer.compare(id, that.id);
+        }
+    }
+
+    private static int bucketLength(HashMap.Entry<?, ?> bucket) {
+        int length = 0;
+        for (HashMap.Entry<?, ?> entry = bucket; entry != null; entry = entry.next) {
+            length++;
+        }
+        return length;
+    }
+
+    @Test
+    public void testTreeBucketFindsEqualKeysOfOtherClasses() {
+        HashMap<List<Integer>, Integer> myHashMap = new HashMap<List<Integer>, Integer>(64);
+        for (int keyNum = 0; keyNum < 16; keyNum++) {
+            // Every list [i, 1000 - 31 * i] has the same hashCode
+            myHashMap.put(new ArrayList<>(Arrays.asList(keyNum, 1000 - 31 * keyNum)), keyNum);
+        }
+        HashMap.Entry<List<Integer>, Integer> bucket = null;
+        for (HashMap.Entry<List<Integer>, Integer> entry : myHashMap.getTable()) {
+            if (entry != null) {
+                bucket = entry;
+            }
+        }
+        assertTrue(bucket instanceof HashMap.TreeNode);
+        for (int keyNum = 0; keyNum < 16; keyNum++) {
+            List<Integer> equalKey = new LinkedList<>(Arrays.asList(keyNum, 1000 - 31 * keyNum));
+            assertTrue(myHashMap.containsKey(equalKey));
+            assertEquals((Integer) keyNum, myHashMap.get(equalKey));
+        }
+        assertEquals((Integer) 3, myHashMap.put(new LinkedList<>(Arrays.asList(3, 907)), 30));
+        assertEquals(16, myHashMap.size());
+        assertEquals((Integer) 30, myHashMap.get(new ArrayList<>(Arrays.asList(3, 907))));
+        assertEquals((Integer) 5, myHashMap.remove(new LinkedList<>(Arrays.asList(5, 845))));
+        assertEquals(15, myHashMap.size());
+        assertNull(myHashMap.get(new ArrayList<>(Arrays.asList(5, 845))));
+    }
+
+    @Test
+    public void testCollidingBucketIsTreeified() {
+        HashMap<CollidingKey, Integer> myHashMap = new HashMap<CollidingKey, Integer>(64);
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            myHashMap.put(new CollidingKey(keyNum), keyNum);
+        }
+        HashMap.Entry<CollidingKey, Integer> bucket = null;
+        for (HashMap.Entry<CollidingKey, Integer> entry : myHashMap.getTable()) {
+            if (entry != null) {
+                bucket = entry;
+            }
+        }
+        assertTrue(bucket instanceof HashMap.TreeNode);
+        assertEquals(1000, bucketLength(bucket));
+
+        CollidingKey.equalsCalls = 0;
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get(new CollidingKey(keyNum)));
+        }
+        // A chain would need 500 calls per lookup on average; a balanced tree about log2(1000)
+        assertTrue(CollidingKey.equalsCalls < 1000 * 15);
+        assertFalse(myHashMap.containsKey(new CollidingKey(-1)));
+    }
+
+    @Test
+    public void testTreeBucketUntreeifiesOnRemove() {
+        HashMap<CollidingKey, Integer> myHashMap = new HashMap<CollidingKey, Integer>(64);
+        for (int keyNum = 0; keyNum < 20; keyNum++) {
+            myHashMap.put(new CollidingKey(keyNum), keyNum);
+        }
+        for (int keyNum = 0; keyNum < 14; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.remove(new CollidingKey(keyNum)));
+            assertNull(myHashMap.remove(new CollidingKey(keyNum)));
+        }
+        assertEquals(6, myHashMap.size());
+        for (HashMap.Entry<CollidingKey, Integer> bucket : myHashMap.getTable()) {
+            assertFalse(bucket instanceof HashMap.TreeNode);
+        }
+        for (int keyNum = 14; keyNum < 20; keyNum++) {
+            assertEquals((Integer) keyNum, myHashMap.get(new CollidingKey(keyNum)));
+        }
+    }
+
+    @Test
+    public void testSmallTableResizesInsteadOfTreeifying() {
+        HashMap<CollidingKey, Integer> myHashMap = new HashMap<CollidingKey, Integer>(2, 100f);
+        for (int keyNum = 0; keyNum < 9; keyNum++) {
+            myHashMap.put(new CollidingKey(keyNum), keyNum);
+        }
+        assertTrue(myHashMap.getTable().length > 2);
+        for (HashMap.Entry<CollidingKey, Integer> bucket : myHashMap.getTable()) {
+            assertFalse(bucket instanceof HashMap.TreeNode);
+        }
+    }
+
+    @Test
+    public void testTreeBucketsMatchJavaHashMap() {
+        // Keys that are not Comparable and share a handful of hashCodes
+        final class Key {
+            private final int id;
+
+            Key(int id) {
+                this.id = id;
+            }
+
+            @Override
+            public int hashCode() {
+                return id % 4;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Key && ((Key) o).id == id;
+            }
+        }
+        HashMap<Object, Integer> myHashMap = new HashMap<Object, Integer>(64);
+        java.util.HashMap<Object, Integer> expected = new java.util.HashMap<>();
+        Random random = new Random(42);
+        for (int op = 0; op < 20000; op++) {
+            int id = random.nextInt(300);
+            // Mix in String and null keys so that buckets hold keys of several classes
+            Object key = id < 10 ? null : id < 100 ? (Object) ("k" + id) : new Key(id);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), myHashMap.remove(key));
+            } else {
+                assertEquals(expected.put(key, op), myHashMap.put(key, op));
+            }
+            assertEquals(expected.size(), myHashMap.size());
+        }
+        for (int id = 0; id < 300; id++) {
+            Object key = id < 10 ? null : id < 100 ? (Object) ("k" + id) : new Key(id);
+            assertEquals(expected.get(key), myHashMap.get(key));
+            assertEquals(expected.containsKey(key), myHashMap.containsKey(key));
+        }
+        int entries = 0;
+        for (Iterator<Map.Entry<Object, Integer>> it = myHashMap.entryIterator(); it.hasNext(); ) {
+            Map.Entry<Object, Integer> entry = it.next();
+            assertEquals(expected.get(entry.getKey()), entry.getValue());
+            entries++;
+        }
+        assertEquals(expected.size(), entries);
+    }
+
+    /**
+     * A key with a distinct hashCode per id, counting the calls to hashCode and equals.
+     */
+    private static final class CountingKey {
+        private static int hashCodeCalls;
+        private static int equalsCalls;
+        private final int id;
+
+        CountingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            hashCodeCalls++;
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            equalsCalls++;
+            return o instanceof CountingKey && ((CountingKey) o).id == id;
+        }
+    }
+
+    @Test
+    public void testResizeReusesCachedHash() {
+        HashMap<CountingKey, Integer> myHashMap = new HashMap<CountingKey, Integer>();
+        CountingKey.hashCodeCalls = 0;
+        for (int keyNum = 0; keyNum < 1000; keyNum++) {
+            myHashMap.put(new CountingKey(keyNum), keyNum);
+        }
+        // One call per put, none for the resizes along the way
+        assertEquals(1000, CountingKey.hashCodeCalls);
+    }
+
+    @Test
+    public void testLookupComparesHashBeforeEquals() {
+        // A single bucket that never resizes, so every key shares one chain
+        HashMap<CountingKey, Integer> myHashMap = new HashMap<CountingKey, Integer>(1, 100f);
+        for (int keyNum = 0; keyNum < 7; keyNum++) {
+            myHashMap.put(new CountingKey(keyNum), keyNum);
+        }
+        assertEquals(1, myHashMap.getTable().length);
+        CountingKey.equalsCalls = 0;
+        assertEquals((Integer) 0, myHashMap.get(new CountingKey(0)));
+        assertNull(myHashMap.get(new CountingKey(7)));
+        assertEquals(1, CountingKey.equalsCalls);
+    }
+
     /*
     I couldn't get this test case to finish executing because it (obviously) takes forever,
     but this would theoretically test Max Capacity
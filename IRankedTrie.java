@@ -0,0 +1,23 @@
+import java.util.List;
+
+/**
+ * A trie whose values carry weights, so that the heaviest values under a prefix can be retrieved
+ * without collecting every value in the subtree.
+ *
+ * @param <V> the type of mapped values
+ */
+public interface IRankedTrie<V> extends ITrie<V> {
+
+    /**
+     * Returns the {@code k} heaviest values whose keys have prefix as a prefix, in descending
+     * order of weight. Fewer than {@code k} values are returned if there are not that many.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @param k      the maximum number of values to return
+     * @return at most k values whose key has prefix as a prefix, heaviest first
+     * @throws IllegalArgumentException if the specified prefix is null, if k is not positive, or
+     * if the prefix contains characters that are not lowercase letters
+     * @throws IllegalStateException if this trie was not constructed with a weigher
+     */
+    List<V> topValuesWithPrefix(CharSequence prefix, int k);
+}
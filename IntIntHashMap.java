@@ -0,0 +1,307 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from {@code int} keys to {@code int} values that neither boxes nor allocates per
+ * mapping. It uses the same open addressing scheme as {@link OpenHashMap}: linear probing over
+ * parallel arrays, with backward-shift deletion.
+ * <p>
+ * Since primitives cannot be null, the key 0 marks a free slot and the mapping for the key 0, if
+ * any, is kept outside the arrays. Lookups of absent keys return the map's missing value, which is
+ * chosen at construction and is 0 by default.
+ */
+public class IntIntHashMap {
+
+    // The default initial capacity - MUST be a power of two.
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    // The maximum capacity. Here, we define capacity to be the number of slots.
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // The load factor for the table.
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // The key 0 marks a free slot.
+    private static final int FREE = 0;
+
+    // The value returned for absent keys.
+    private final int missingValue;
+
+    // The keys, or FREE for a free slot. Length MUST always be a power of two.
+    private int[] keys;
+
+    // The value of the key in the same slot.
+    private int[] values;
+
+    // Whether the key 0 is mapped, and to what.
+    private boolean hasFreeKey;
+    private int freeValue;
+
+    // The number of key-value mappings contained in this map, including the key 0.
+    private int size;
+
+    // The number of keys in the arrays at which to resize (capacity * load factor).
+    private int threshold;
+
+    /**
+     * Receives the mappings of the map.
+     */
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    /**
+     * Constructs an empty IntIntHashMap with the specified initial capacity and missing value.
+     *
+     * @param initialCapacity the initial capacity
+     * @param missingValue    the value returned by {@code get}, {@code put} and {@code remove}
+     *                        when the key is absent
+     * @throws IllegalArgumentException if the initial capacity is non-positive
+     */
+    public IntIntHashMap(int initialCapacity, int missingValue) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal initial capacity: " + initialCapacity);
+        }
+        if (initialCapacity > MAXIMUM_CAPACITY) {
+            initialCapacity = MAXIMUM_CAPACITY;
+        }
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 1;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        this.missingValue = missingValue;
+        allocate(capacity);
+    }
+
+    /**
+     * Constructs an empty IntIntHashMap with the default initial capacity (16) whose missing
+     * value is 0.
+     */
+    public IntIntHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, 0);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        // Keep at least one slot free, even for tiny tables
+        threshold = Math.min(capacity - 1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    /**
+     * Returns the home slot of a key, by multiplying it by the golden ratio and keeping the
+     * mixed bits.
+     */
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the slot holding the specified non-zero key, or -1 if it is not present.
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if this map contains no mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the value the map returns for absent keys
+     */
+    public int missingValue() {
+        return missingValue;
+    }
+
+    /**
+     * @param key the key
+     * @return the value mapped to key, or the missing value if key is absent
+     */
+    public int get(int key) {
+        if (key == FREE) {
+            return hasFreeKey ? freeValue : missingValue;
+        }
+        int i = find(key);
+        return i < 0 ? missingValue : values[i];
+    }
+
+    /**
+     * @param key the key
+     * @return true if key is mapped to a value
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE) {
+            return hasFreeKey;
+        }
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps key to value.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the previous value mapped to key, or the missing value if key was absent
+     */
+    public int put(int key, int value) {
+        if (key == FREE) {
+            int oldValue = hasFreeKey ? freeValue : missingValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeValue = value;
+            return oldValue;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != FREE) {
+            if (keys[i] == key) {
+                int oldValue = values[i];
+                values[i] = value;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size - (hasFreeKey ? 1 : 0) >= threshold) {
+            resize(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Adds delta to the value mapped to key, treating an absent key as mapped to 0.
+     *
+     * @param key   the key
+     * @param delta the amount to add
+     * @return the new value mapped to key
+     */
+    public int addTo(int key, int delta) {
+        int i = key == FREE ? -1 : find(key);
+        if (i >= 0) {
+            return values[i] += delta;
+        }
+        int value = (key == FREE && hasFreeKey ? freeValue : 0) + delta;
+        put(key, value);
+        return value;
+    }
+
+    private void resize(int newCapacity) {
+        if (keys.length == MAXIMUM_CAPACITY) {
+            if (threshold == MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("IntIntHashMap is full");
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key != FREE) {
+                int i = slot(key, mask);
+                while (keys[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Removes the mapping for key, if any.
+     *
+     * @param key the key
+     * @return the value that was mapped to key, or the missing value if key was absent
+     */
+    public int remove(int key) {
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                return missingValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeValue;
+        }
+        int i = find(key);
+        if (i < 0) {
+            return missingValue;
+        }
+        int oldValue = values[i];
+        size--;
+        closeGap(i);
+        return oldValue;
+    }
+
+    /**
+     * Empties slot gap, then moves back each later key of the same cluster whose home slot does
+     * not lie cyclically in (gap, its slot].
+     */
+    private void closeGap(int gap) {
+        int mask = keys.length - 1;
+        for (int i = (gap + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int home = slot(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    /**
+     * Removes all of the mappings, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    /**
+     * Passes each mapping to consumer, the key 0 first and then in slot order. The map must not
+     * be modified meanwhile.
+     *
+     * @param consumer receives each key and its value
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasFreeKey) {
+            consumer.accept(FREE, freeValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class IntIntHashMapTest {
+
+    @Test
+    public void testMissingValue() {
+        IntIntHashMap myHashMap = new IntIntHashMap(16, -1);
+        assertEquals(-1, myHashMap.get(5));
+        assertEquals(-1, myHashMap.put(5, 50));
+        assertEquals(50, myHashMap.put(5, 51));
+        assertEquals(51, myHashMap.remove(5));
+        assertEquals(-1, myHashMap.remove(5));
+        assertTrue(myHashMap.isEmpty());
+    }
+
+    @Test
+    public void testZeroKey() {
+        IntIntHashMap myHashMap = new IntIntHashMap();
+        assertFalse(myHashMap.containsKey(0));
+        myHashMap.put(0, 7);
+        assertTrue(myHashMap.containsKey(0));
+        assertEquals(7, myHashMap.get(0));
+        assertEquals(1, myHashMap.size());
+        assertEquals(10, myHashMap.addTo(0, 3));
+        assertEquals(10, myHashMap.remove(0));
+        assertFalse(myHashMap.containsKey(0));
+    }
+
+    @Test
+    public void testAddTo() {
+        IntIntHashMap myHashMap = new IntIntHashMap();
+        assertEquals(3, myHashMap.addTo(9, 3));
+        assertEquals(7, myHashMap.addTo(9, 4));
+        assertEquals(7, myHashMap.get(9));
+        assertEquals(1, myHashMap.size());
+    }
+
+    @Test
+    public void testMatchesJavaHashMap() {
+        IntIntHashMap myHashMap = new IntIntHashMap(1, 0);
+        java.util.HashMap<Integer, Integer> expected = new java.util.HashMap<>();
+        Random random = new Random(42);
+        for (int op = 0; op < 20000; op++) {
+            // Multiples of 1024 collide in the low bits
+            int key = (random.nextInt(400) - 200) * 1024;
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? 0 : removed, myHashMap.remove(key));
+            } else {
+                Integer previous = expected.put(key, op);
+                assertEquals(previous == null ? 0 : previous, myHashMap.put(key, op));
+            }
+            assertEquals(expected.size(), myHashMap.size());
+        }
+        Map<Integer, Integer> actual = new java.util.HashMap<>();
+        myHashMap.forEach(actual::put);
+        assertEquals(expected, actual);
+        myHashMap.clear();
+        assertTrue(myHashMap.isEmpty());
+        assertFalse(myHashMap.containsKey(1024));
+    }
+}
@@ -0,0 +1,447 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A read-only trie of {@link ITerm} values served directly from a memory-mapped index file.
+ * <p>
+ * The file holds the same preorder arrays as {@link FrozenTrie}, followed by the weight and
+ * query of every term, so opening an index only maps the file: no node is deserialized onto the
+ * heap, and {@link ITerm} objects are created only for the terms a query returns. Several
+ * processes that open the same index share its pages through the operating system's page cache.
+ * <p>
+ * All integers are big-endian. With {@code n} nodes and {@code m} terms, the layout is:
+ * <pre>
+ *   int     magic, version, n, m
+ *   long[n] maximum weight in each node's subtree
+ *   long[m] weight of each term
+ *   int[n]  exclusive end of each node's subtree
+ *   int[n+1] number of terms before each node, then the total
+ *   int[m+1] offset of each term's query in the query bytes, then the total length
+ *   byte[n] character on the edge into each node (unused for the root)
+ *   byte[]  the queries, one byte per lowercase letter
+ * </pre>
+ * The whole file must be smaller than 2 GB so that it fits in one mapped buffer.
+ * <p>
+ * All mutating methods throw {@link UnsupportedOperationException}.
+ */
+public class MappedTrie implements IRankedTrie<ITerm> {
+
+    private static final int MAGIC = 0x54524945;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int termCount;
+    private final int maxWeightOffset;
+    private final int weightOffset;
+    private final int subtreeEndOffset;
+    private final int valueRankOffset;
+    private final int queryOffsetOffset;
+    private final int labelOffset;
+    private final int queryBytesOffset;
+
+    private MappedTrie(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a trie index file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported trie index version: " + buffer.getInt(4));
+        }
+        nodeCount = buffer.getInt(8);
+        termCount = buffer.getInt(12);
+        maxWeightOffset = HEADER_BYTES;
+        weightOffset = maxWeightOffset + 8 * nodeCount;
+        subtreeEndOffset = weightOffset + 8 * termCount;
+        valueRankOffset = subtreeEndOffset + 4 * nodeCount;
+        queryOffsetOffset = valueRankOffset + 4 * (nodeCount + 1);
+        labelOffset = queryOffsetOffset + 4 * (termCount + 1);
+        queryBytesOffset = labelOffset + nodeCount;
+        if (queryBytesOffset < 0 || queryBytesOffset > buffer.capacity()) {
+            throw new IOException("Truncated trie index file");
+        }
+    }
+
+    /**
+     * Maps the index file with the specified name.
+     *
+     * @param filename the index file, as written by {@link #write(FrozenTrie, String)}
+     * @return a trie served from the mapped file
+     * @throws IOException if the file cannot be read or is not a valid index
+     */
+    public static MappedTrie open(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Trie index file is too large to map: " + channel.size());
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedTrie(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the specified trie to an index file that can later be opened with
+     * {@link #open(String)}. The query of each term is its key in the trie.
+     *
+     * @param trie     the trie to write
+     * @param filename the file to write to, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(FrozenTrie<ITerm> trie, String filename) throws IOException {
+        char[] labels = trie.getLabels();
+        int[] subtreeEnds = trie.getSubtreeEnds();
+        int[] valueRanks = trie.getValueRanks();
+        int nodes = labels.length;
+        int terms = trie.size();
+
+        // Subtree maxima, children before parents, so walk the preorder backwards
+        long[] maxWeights = new long[nodes];
+        for (int node = nodes - 1; node >= 0; node--) {
+            long max = Long.MIN_VALUE;
+            if (valueRanks[node + 1] > valueRanks[node]) {
+                max = trie.getValue(valueRanks[node]).getWeight();
+            }
+            for (int child = node + 1; child < subtreeEnds[node]; child = subtreeEnds[child]) {
+                max = Math.max(max, maxWeights[child]);
+            }
+            maxWeights[node] = max;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodes);
+            out.writeInt(terms);
+            for (long maxWeight : maxWeights) {
+                out.writeLong(maxWeight);
+            }
+            for (int rank = 0; rank < terms; rank++) {
+                out.writeLong(trie.getValue(rank).getWeight());
+            }
+            for (int end : subtreeEnds) {
+                out.writeInt(end);
+            }
+            for (int rank : valueRanks) {
+                out.writeInt(rank);
+            }
+            List<String> queries = new ArrayList<>(terms);
+            int offset = 0;
+            for (Iterator<Map.Entry<CharSequence, ITerm>> it = trie.entryIterator(); it.hasNext(); ) {
+                String query = it.next().getKey().toString();
+                queries.add(query);
+                out.writeInt(offset);
+                offset += query.length();
+            }
+            out.writeInt(offset);
+            for (char label : labels) {
+                out.writeByte(label);
+            }
+            for (String query : queries) {
+                out.writeBytes(query);
+            }
+        }
+    }
+
+    private long maxWeight(int node) {
+        return buffer.getLong(maxWeightOffset + 8 * node);
+    }
+
+    private int subtreeEnd(int node) {
+        return buffer.getInt(subtreeEndOffset + 4 * node);
+    }
+
+    private int valueRank(int node) {
+        return buffer.getInt(valueRankOffset + 4 * node);
+    }
+
+    private char label(int node) {
+        return (char) buffer.get(labelOffset + node);
+    }
+
+    private boolean hasValue(int node) {
+        return valueRank(node + 1) > valueRank(node);
+    }
+
+    /**
+     * Materializes the term with the specified rank from the mapped file.
+     */
+    private ITerm term(int rank) {
+        int from = buffer.getInt(queryOffsetOffset + 4 * rank);
+        int to = buffer.getInt(queryOffsetOffset + 4 * (rank + 1));
+        char[] query = new char[to - from];
+        for (int i = 0; i < query.length; i++) {
+            query[i] = (char) buffer.get(queryBytesOffset + from + i);
+        }
+        return new Term(new String(query), buffer.getLong(weightOffset + 8 * rank));
+    }
+
+    /**
+     * Returns the child of node i reached by character c, or -1 if there is none.
+     */
+    private int child(int i, char c) {
+        if (c < 'a' || c > 'z') {
+            throw new IllegalArgumentException("Character must be in the range [a..z]");
+        }
+        int end = subtreeEnd(i);
+        for (int j = i + 1; j < end; j = subtreeEnd(j)) {
+            char label = label(j);
+            if (label == c) {
+                return j;
+            }
+            if (label > c) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the node whose key is exactly key, or -1 if there is none.
+     */
+    private int find(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        int node = 0;
+        for (int i = 0; i < key.length() && node >= 0; i++) {
+            node = child(node, key.charAt(i));
+        }
+        return node;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public int size() {
+        return termCount;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public boolean isEmpty() {
+        return termCount == 0;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public ITerm put(CharSequence key, ITerm value) {
+        throw new UnsupportedOperationException("MappedTrie is read-only");
+    }
+
+    /**
+     * Returns a new term read from the index, or null if the key is absent.
+     *
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public ITerm get(CharSequence key) {
+        int node = find(key);
+        if (node < 0 || !hasValue(node)) {
+            return null;
+        }
+        return term(valueRank(node));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public boolean containsKey(CharSequence key) {
+        int node = find(key);
+        return node >= 0 && hasValue(node);
+    }
+
+    /**
+     * Terms read from the index are new objects, so a term matches the specified value when
+     * their string representations, which hold the weight and the query, are equal.
+     *
+     * @throws IllegalArgumentException if the specified value is null
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        String target = value.toString();
+        for (int rank = 0; rank < termCount; rank++) {
+            if (term(rank).toString().equals(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public ITerm remove(CharSequence key) {
+        throw new UnsupportedOperationException("MappedTrie is read-only");
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("MappedTrie is read-only");
+    }
+
+    /**
+     * Returns the number of values whose keys have prefix as a prefix
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the number of entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public int countPrefixes(CharSequence prefix) {
+        int node = find(prefix);
+        if (node < 0) {
+            return 0;
+        }
+        return valueRank(subtreeEnd(node)) - valueRank(node);
+    }
+
+    /**
+     * Returns a list of values of all entries whose key has prefix as a prefix, in lexicographic
+     * order of their keys
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the value of all entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H + number of values returned) time.
+     */
+    @Override
+    public List<ITerm> allValuesWithPrefix(CharSequence prefix) {
+        int node = find(prefix);
+        if (node < 0) {
+            return Collections.emptyList();
+        }
+        int from = valueRank(node);
+        int to = valueRank(subtreeEnd(node));
+        List<ITerm> result = new ArrayList<>(to - from);
+        for (int rank = from; rank < to; rank++) {
+            result.add(term(rank));
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs the same best-first search as {@link Trie#topValuesWithPrefix(CharSequence, int)}
+     * over the mapped arrays, and materializes only the k terms returned.
+     *
+     * @implSpec This method should run in O(H + k * log k) time.
+     */
+    @Override
+    public List<ITerm> topValuesWithPrefix(CharSequence prefix, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        int start = find(prefix);
+        if (start < 0) {
+            return Collections.emptyList();
+        }
+        List<ITerm> result = new ArrayList<>();
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>();
+        frontier.add(new Candidate(start, false, maxWeight(start)));
+        while (!frontier.isEmpty() && result.size() < k) {
+            Candidate best = frontier.poll();
+            int node = best.node;
+            if (best.isValue) {
+                result.add(term(valueRank(node)));
+                continue;
+            }
+            if (hasValue(node)) {
+                frontier.add(new Candidate(node, true,
+                        buffer.getLong(weightOffset + 8 * valueRank(node))));
+            }
+            int end = subtreeEnd(node);
+            for (int child = node + 1; child < end; child = subtreeEnd(child)) {
+                frontier.add(new Candidate(child, false, maxWeight(child)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An entry in the frontier of the best-first search: either an unexpanded node, bounded by
+     * the maximum weight in its subtree, or the term held by a node, with its own weight.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        private final int node;
+        private final boolean isValue;
+        private final long weight;
+
+        Candidate(int node, boolean isValue, long weight) {
+            this.node = node;
+            this.isValue = isValue;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate that) {
+            return Long.compare(that.weight, weight);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entries are produced lazily in lexicographic order, with a new term read from the index
+     * for each entry.
+     *
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public Iterator<Map.Entry<CharSequence, ITerm>> entryIterator() {
+        return new Iterator<Map.Entry<CharSequence, ITerm>>() {
+            private int rank = 0;
+
+            @Override
+            public boolean hasNext() {
+                return rank < termCount;
+            }
+
+            @Override
+            public Map.Entry<CharSequence, ITerm> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int from = buffer.getInt(queryOffsetOffset + 4 * rank);
+                int to = buffer.getInt(queryOffsetOffset + 4 * (rank + 1));
+                StringBuilder key = new StringBuilder(to - from);
+                for (int i = from; i < to; i++) {
+                    key.append((char) buffer.get(queryBytesOffset + i));
+                }
+                return new AbstractMap.SimpleImmutableEntry<>(key.toString(), term(rank++));
+            }
+        };
+    }
+}
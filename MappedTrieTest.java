@@ -0,0 +1,101 @@
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+
+public class MappedTrieTest {
+
+    private File indexFile;
+    private MappedTrie mapped;
+
+    @Before
+    public void setUp() throws IOException {
+        Trie<ITerm> myTrie = new Trie<>(ITerm::getWeight);
+        myTrie.put("charizard", new Term("charizard", 100));
+        myTrie.put("charmander", new Term("charmander", 50));
+        myTrie.put("charmeleon", new Term("charmeleon", 25));
+        myTrie.put("char", new Term("char", 5));
+        myTrie.put("blastoise", new Term("blastoise", 50));
+        myTrie.put("squirtle", new Term("squirtle", 25));
+        indexFile = File.createTempFile("trie", ".idx");
+        MappedTrie.write(new FrozenTrie<>(myTrie), indexFile.getPath());
+        mapped = MappedTrie.open(indexFile.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+    }
+
+    @Test
+    public void testGet() {
+        assertEquals(6, mapped.size());
+        assertEquals("50\tcharmander", mapped.get("charmander").toString());
+        assertEquals("5\tchar", mapped.get("char").toString());
+        assertNull(mapped.get("cha"));
+        assertTrue(mapped.containsKey("squirtle"));
+        assertFalse(mapped.containsKey("bulbasaur"));
+    }
+
+    @Test
+    public void testCountPrefixes() {
+        assertEquals(4, mapped.countPrefixes("char"));
+        assertEquals(2, mapped.countPrefixes("charm"));
+        assertEquals(6, mapped.countPrefixes(""));
+        assertEquals(0, mapped.countPrefixes("bhar"));
+    }
+
+    @Test
+    public void testAllValuesWithPrefix() {
+        assertEquals("[5\tchar, 100\tcharizard, 50\tcharmander, 25\tcharmeleon]",
+                mapped.allValuesWithPrefix("char").toString());
+        assertEquals(Collections.emptyList(), mapped.allValuesWithPrefix("bhar"));
+    }
+
+    @Test
+    public void testTopValuesWithPrefix() {
+        assertEquals("[100\tcharizard, 50\tcharmander]",
+                mapped.topValuesWithPrefix("ch", 2).toString());
+    }
+
+    @Test
+    public void testContainsValue() {
+        assertTrue(mapped.containsValue(new Term("blastoise", 50)));
+        assertFalse(mapped.containsValue(new Term("blastoise", 51)));
+    }
+
+    @Test
+    public void testEntryIterator() {
+        List<String> keys = new ArrayList<>();
+        Iterator<Map.Entry<CharSequence, ITerm>> it = mapped.entryIterator();
+        while (it.hasNext()) {
+            keys.add(it.next().getKey().toString());
+        }
+        assertEquals(Arrays.asList("blastoise", "char", "charizard", "charmander", "charmeleon",
+                "squirtle"), keys);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenInvalidFile() throws IOException {
+        File bogus = File.createTempFile("trie", ".idx");
+        try (FileWriter out = new FileWriter(bogus)) {
+            out.write("not an index at all");
+        }
+        try {
+            MappedTrie.open(bogus.getPath());
+        } finally {
+            bogus.delete();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPutUnsupported() {
+        mapped.put("bulbasaur", new Term("bulbasaur", 5));
+    }
+}
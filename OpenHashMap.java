@@ -0,0 +1,402 @@
+import java.util.*;
+
+/**
+ * An {@link IHashMap} using open addressing: keys, values and hashes live in parallel arrays, and
+ * a key that collides is stored in the next free slot after its home slot (linear probing).
+ * <p>
+ * Unlike {@link HashMap}, no object is allocated per mapping, neither by {@code put} nor by
+ * resizing, and a probe sequence walks adjacent array slots instead of following pointers. The
+ * spread hash of each key is stored alongside it, so probing past other keys only reads an
+ * {@code int} array.
+ * <p>
+ * Removal uses backward-shift deletion: the entries after the removed slot are moved back into
+ * the gap where their probe sequence allows, so no tombstones are left behind and lookups never
+ * slow down as entries come and go.
+ * <p>
+ * Like {@link HashMap}, null keys and null values are permitted. An empty slot is marked by a
+ * null key, so the mapping for the null key, if any, is kept outside the arrays.
+ */
+public class OpenHashMap<K, V> implements IHashMap<K, V> {
+
+    // The default initial capacity - MUST be a power of two.
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    // The maximum capacity. Here, we define capacity to be the number of slots.
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    // The load factor used when not specified in constructor.
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    // The load factor for the table. Must be below 1, so that there is always a free slot to
+    // end a probe sequence.
+    private final float loadFactor;
+
+    // The keys, or null for a free slot. Length MUST always be a power of two.
+    private Object[] keys;
+
+    // The value of the key in the same slot.
+    private Object[] values;
+
+    // The spread hash of the key in the same slot. Probes compare these first, so a colliding
+    // key is only dereferenced and compared with equals when its hash matches.
+    private int[] hashes;
+
+    // Whether the null key is mapped, and to what.
+    private boolean hasNullKey;
+    private V nullValue;
+
+    // The number of key-value mappings contained in this map, including the null key.
+    private int size;
+
+    // The number of keys in the arrays at which to resize (capacity * load factor).
+    private int threshold;
+
+    /**
+     * Constructs an empty OpenHashMap with the specified initial capacity and load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is non-positive, or the load factor
+     *                                  is not strictly between 0 and 1
+     */
+    public OpenHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal initial capacity: " + initialCapacity);
+        }
+        if (initialCapacity > MAXIMUM_CAPACITY) {
+            initialCapacity = MAXIMUM_CAPACITY;
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException(
+                "Illegal load factor: " + loadFactor);
+        }
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 1;
+        while (capacity < initialCapacity) {
+            capacity <<= 1;
+        }
+
+        this.loadFactor = loadFactor;
+        allocate(capacity);
+    }
+
+    /**
+     * Constructs an empty OpenHashMap with the specified initial capacity and the default load
+     * factor (0.75).
+     *
+     * @param initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is non-positive.
+     */
+    public OpenHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty OpenHashMap with the default initial capacity (16) and the default load
+     * factor (0.75).
+     */
+    public OpenHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+        // Keep at least one slot free, even for tiny tables
+        threshold = Math.min(capacity - 1, (int) (capacity * loadFactor));
+    }
+
+    /**
+     * Applies a supplemental hash function to the hashCode of a non-null key. Multiplying by the
+     * golden ratio and folding the high half into the low half spreads hashCodes that differ only
+     * in their high bits, or that form an arithmetic sequence, across the whole table.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot holding the specified non-null key with the specified hash, or -1 if it
+     * is not present.
+     */
+    private int find(Object key, int hash) {
+        int mask = keys.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == null) {
+                return -1;
+            }
+            if (hashes[i] == hash && (k == key || k.equals(key))) {
+                return i;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (key == null) {
+            return nullValue;
+        }
+        int i = find(key, hash(key));
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key == null) {
+            return hasNullKey;
+        }
+        return find(key, hash(key)) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (key == null) {
+            V oldValue = nullValue;
+            nullValue = value;
+            if (!hasNullKey) {
+                hasNullKey = true;
+                size++;
+            }
+            return oldValue;
+        }
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) {
+            if (hashes[i] == hash && (keys[i] == key || keys[i].equals(key))) {
+                V oldValue = (V) values[i];
+                values[i] = value;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        hashes[i] = hash;
+        size++;
+        if (size - (hasNullKey ? 1 : 0) >= threshold) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Rehashes the contents of this map into arrays with a larger capacity. This method is called
+     * automatically when the number of keys in the arrays reaches the threshold.
+     * <p>
+     * If current capacity is MAXIMUM_CAPACITY, this method does not resize the map, but instead
+     * sets threshold so that only the last free slot is kept free.
+     *
+     * @param newCapacity the new capacity, MUST be a power of two
+     */
+    void resize(int newCapacity) {
+        if (keys.length == MAXIMUM_CAPACITY) {
+            if (threshold == MAXIMUM_CAPACITY - 1) {
+                throw new IllegalStateException("OpenHashMap is full");
+            }
+            threshold = MAXIMUM_CAPACITY - 1;
+            return;
+        }
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        allocate(newCapacity);
+        int mask = newCapacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+                hashes[i] = oldHashes[j];
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (key == null) {
+            V oldValue = nullValue;
+            if (hasNullKey) {
+                hasNullKey = false;
+                nullValue = null;
+                size--;
+            }
+            return oldValue;
+        }
+        int i = find(key, hash(key));
+        if (i < 0) {
+            return null;
+        }
+        V oldValue = (V) values[i];
+        size--;
+        closeGap(i);
+        return oldValue;
+    }
+
+    /**
+     * Empties slot gap, then moves back each later key of the same cluster whose home slot does
+     * not lie cyclically in (gap, its slot], so that every key stays reachable from its home slot.
+     */
+    private void closeGap(int gap) {
+        int mask = keys.length - 1;
+        for (int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = hashes[i] & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                hashes[gap] = hashes[i];
+                gap = i;
+            }
+        }
+        keys[gap] = null;
+        values[gap] = null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        if (hasNullKey && Objects.equals(nullValue, value)) {
+            return true;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void clear() {
+        allocate(DEFAULT_INITIAL_CAPACITY);
+        hasNullKey = false;
+        nullValue = null;
+        size = 0;
+    }
+
+    /**
+     * Returns the slot capacity of the table, for testing.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The mapping for the null key comes first, followed by the other mappings in slot order.
+     * {@code setValue} on a returned entry writes through to the map.
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> entryIterator() {
+        return new Iterator<Map.Entry<K, V>>() {
+            private boolean nullKeyPending = hasNullKey;
+            private int index = nextSlot(0);
+
+            private int nextSlot(int from) {
+                while (from < keys.length && keys[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nullKeyPending || index < keys.length;
+            }
+
+            @Override
+            public Map.Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (nullKeyPending) {
+                    nullKeyPending = false;
+                    return new SlotEntry(-1);
+                }
+                Map.Entry<K, V> entry = new SlotEntry(index);
+                index = nextSlot(index + 1);
+                return entry;
+            }
+        };
+    }
+
+    @Override
+    public java.util.Set<Map.Entry<K, V>> entrySet() {
+        HashSet<Map.Entry<K, V>> outSet = new HashSet<>();
+        for (Iterator<Map.Entry<K, V>> it = entryIterator(); it.hasNext(); ) {
+            Map.Entry<K, V> entry = it.next();
+            outSet.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue()));
+        }
+        return outSet;
+    }
+
+    /**
+     * A view of one mapping: the slot it occupies, or -1 for the null key.
+     */
+    private final class SlotEntry implements Map.Entry<K, V> {
+        private final int slot;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return slot < 0 ? null : (K) keys[slot];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return slot < 0 ? nullValue : (V) values[slot];
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = getValue();
+            if (slot < 0) {
+                nullValue = value;
+            } else {
+                values[slot] = value;
+            }
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), entry.getKey())
+                    && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class OpenHashMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        OpenHashMap<String, Integer> myHashMap = new OpenHashMap<String, Integer>();
+        assertNull(myHashMap.put("i", 1));
+        myHashMap.put("s", 2);
+        assertEquals((Integer) 1, myHashMap.put("i", 3));
+        assertEquals((Integer) 3, myHashMap.get("i"));
+        assertNull(myHashMap.get("a"));
+        assertEquals(2, myHashMap.size());
+        assertEquals((Integer) 2, myHashMap.remove("s"));
+        assertNull(myHashMap.remove("s"));
+        assertFalse(myHashMap.containsKey("s"));
+        assertEquals(1, myHashMap.size());
+    }
+
+    @Test
+    public void testNullKeyAndValue() {
+        OpenHashMap<String, Integer> myHashMap = new OpenHashMap<String, Integer>();
+        assertFalse(myHashMap.containsKey(null));
+        myHashMap.put(null, 1);
+        myHashMap.put("a", null);
+        assertEquals(2, myHashMap.size());
+        assertEquals((Integer) 1, myHashMap.get(null));
+        assertTrue(myHashMap.containsKey("a"));
+        assertTrue(myHashMap.containsValue(null));
+        assertTrue(myHashMap.containsValue(1));
+        assertEquals((Integer) 1, myHashMap.remove(null));
+        assertFalse(myHashMap.containsKey(null));
+        assertEquals(1, myHashMap.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalLoadFactor() {
+        new OpenHashMap<String, Integer>(16, 1.0f);
+    }
+
+    @Test
+    public void testRemoveKeepsCollidingKeysReachable() {
+        OpenHashMap<Object, Integer> myHashMap = new OpenHashMap<Object, Integer>();
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Pairs of keys share a hash, so the probe sequences overlap
+            int hash = i / 2;
+            keys.add(new Object() {
+                @Override
+                public int hashCode() {
+                    return hash;
+                }
+            });
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            myHashMap.put(keys.get(i), i);
+        }
+        for (int removed = 0; removed < keys.size(); removed += 3) {
+            assertEquals((Integer) removed, myHashMap.remove(keys.get(removed)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 3 == 0 ? null : (Integer) i, myHashMap.get(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testMatchesJavaHashMap() {
+        OpenHashMap<Integer, Integer> myHashMap = new OpenHashMap<Integer, Integer>(2);
+        java.util.HashMap<Integer, Integer> expected = new java.util.HashMap<>();
+        Random random = new Random(42);
+        for (int op = 0; op < 20000; op++) {
+            Integer key = random.nextInt(500) - 1;
+            if (key == -1) {
+                key = null;
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), myHashMap.remove(key));
+            } else {
+                assertEquals(expected.put(key, op), myHashMap.put(key, op));
+            }
+            assertEquals(expected.size(), myHashMap.size());
+        }
+        for (int key = 0; key < 500; key++) {
+            assertEquals(expected.get(key), myHashMap.get(key));
+        }
+        assertEquals(expected.entrySet(), myHashMap.entrySet());
+    }
+
+    @Test
+    public void testResize() {
+        OpenHashMap<Object, Integer> myHashMap = new OpenHashMap<Object, Integer>();
+        for (int keyNum = 0; keyNum < 20; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        for (int keyNum = 0; keyNum < 20; keyNum++) {
+            assertTrue(myHashMap.containsKey("Key" + keyNum));
+            assertEquals((Integer) keyNum, myHashMap.get("Key" + keyNum));
+        }
+        assertEquals(20, myHashMap.size());
+        assertEquals(32, myHashMap.capacity());
+    }
+
+    @Test
+    public void testEntryIteratorSetValue() {
+        OpenHashMap<String, Integer> myHashMap = new OpenHashMap<String, Integer>();
+        myHashMap.put(null, 0);
+        myHashMap.put("a", 1);
+        myHashMap.put("b", 2);
+        for (Iterator<Map.Entry<String, Integer>> it = myHashMap.entryIterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> entry = it.next();
+            entry.setValue(entry.getValue() * 10);
+        }
+        assertEquals((Integer) 0, myHashMap.get(null));
+        assertEquals((Integer) 10, myHashMap.get("a"));
+        assertEquals((Integer) 20, myHashMap.get("b"));
+    }
+
+    @Test
+    public void testClear() {
+        OpenHashMap<String, Integer> myHashMap = new OpenHashMap<String, Integer>();
+        for (int keyNum = 0; keyNum < 100; keyNum++) {
+            myHashMap.put("Key" + keyNum, keyNum);
+        }
+        myHashMap.put(null, 1);
+        myHashMap.clear();
+        assertTrue(myHashMap.isEmpty());
+        assertFalse(myHashMap.containsKey(null));
+        assertFalse(myHashMap.entryIterator().hasNext());
+    }
+}
@@ -0,0 +1,473 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe cache of query results keyed by prefix, evicting with the W-TinyLFU
+ * policy so that a scan of prefixes that are each queried only once cannot flush the popular ones.
+ * <p>
+ * The cache is split into segments, as in {@link ConcurrentHashMap}, each guarded by its own
+ * lock and holding a share of the maximum size. Within a segment, new entries enter a small LRU
+ * <em>window</em> (1% of the segment). An entry pushed out of the window is only admitted to the
+ * <em>main</em> region if it has been requested more often than the entry main would evict to
+ * make room; otherwise the newcomer itself is evicted. Request frequencies, including those of
+ * prefixes that missed, are estimated by a {@link FrequencySketch} that halves its counters
+ * periodically, so that the popularity of a prefix fades once it stops being queried.
+ * <p>
+ * The main region is a segmented LRU: an entry that is hit again while on probation is promoted
+ * to the protected queue, which holds 80% of main, and the least recently used protected entry is
+ * demoted back to probation when the protected queue is full.
+ * <p>
+ * Since an update to a key changes the results of every prefix of that key,
+ * {@link #invalidatePrefixesOf(CharSequence)} removes the cached results for all of them at once.
+ *
+ * @param <V> the type of cached results
+ */
+public class PrefixCache<V> {
+
+    // The maximum number of segments.
+    private static final int MAX_SEGMENTS = 16;
+
+    // The smallest share of the maximum size that justifies a segment of its own.
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    // The queues an entry can be in.
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    // The segments, indexed by the high bits of the hash.
+    private final Segment<V>[] segments;
+
+    // The shift that selects the segment of a hash.
+    private final int segmentShift;
+
+    // The maximum number of cached results, shared among the segments.
+    private final int maximumSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an empty PrefixCache holding at most maximumSize results.
+     *
+     * @param maximumSize the maximum number of cached results
+     * @throws IllegalArgumentException if the maximum size is non-positive
+     */
+    @SuppressWarnings("unchecked")
+    public PrefixCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal maximum size: " + maximumSize);
+        }
+        int shift = 0;
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maximumSize) {
+            shift++;
+            segmentCount <<= 1;
+        }
+        this.segmentShift = 32 - shift;
+        this.maximumSize = maximumSize;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int share = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(share, evictions);
+        }
+    }
+
+    /**
+     * Applies a supplemental hash function to the hashCode of a key, so that both the high bits,
+     * which select the segment, and the low bits, which the sketch uses, are well distributed.
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    /**
+     * Returns the cached result for prefix, recording a hit or a miss.
+     *
+     * @param prefix the prefix
+     * @return the cached result, or null if there is none
+     * @throws IllegalArgumentException if the specified prefix is null
+     */
+    public V get(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = hash(prefix);
+        V value = segmentFor(hash).get(prefix, hash);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Caches value as the result for prefix. The result may be evicted straight away if the
+     * prefix has been requested less often than the results already cached.
+     *
+     * @param prefix the prefix
+     * @param value  the result
+     * @throws IllegalArgumentException if either the specified prefix or value is null
+     */
+    public void put(String prefix, V value) {
+        if (prefix == null || value == null) {
+            throw new IllegalArgumentException();
+        }
+        int hash = hash(prefix);
+        segmentFor(hash).put(prefix, hash, value);
+    }
+
+    /**
+     * Removes the cached results for every prefix of key, including the empty prefix and key
+     * itself.
+     *
+     * @param key the key whose prefixes are invalidated
+     * @throws IllegalArgumentException if the specified key is null
+     * @implSpec This method should run in O(H^2) time, where H is the length of key, for
+     * hashing each prefix.
+     */
+    public void invalidatePrefixesOf(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        String word = key.toString();
+        for (int length = 0; length <= word.length(); length++) {
+            String prefix = word.substring(0, length);
+            int hash = hash(prefix);
+            segmentFor(hash).remove(prefix);
+        }
+    }
+
+    /**
+     * Removes every cached result. The frequency estimates and counters are kept.
+     */
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of results currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the maximum number of cached results
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of calls to {@link #get(String)} that found a result
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of calls to {@link #get(String)} that found no result
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of results removed to respect the maximum size, including new results
+     * that were not admitted. Invalidated results are not counted.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * One cached result, linked into the queue it currently belongs to.
+     */
+    private static final class Node<V> {
+        final String key;
+        final int hash;
+        V value;
+        int queue;
+        Node<V> prev;
+        Node<V> next;
+
+        Node(String key, int hash, V value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A doubly linked LRU queue with a sentinel: the least recently used node is first.
+     */
+    private static final class Queue<V> {
+        private final Node<V> sentinel = new Node<>(null, 0, null);
+        int size;
+
+        Queue() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        Node<V> first() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        void addLast(Node<V> node) {
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            size++;
+        }
+
+        void unlink(Node<V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void clear() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            size = 0;
+        }
+    }
+
+    /**
+     * A share of the cache with its own map, queues and frequency sketch.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment<V> extends ReentrantLock {
+        private final HashMap<String, Node<V>> map = new HashMap<>();
+        private final FrequencySketch sketch;
+        private final LongAdder evictions;
+        private final int maximumWindow;
+        private final int maximumProtected;
+        private final int maximumMain;
+        @SuppressWarnings("unchecked")
+        private final Queue<V>[] queues = new Queue[] {new Queue<>(), new Queue<>(), new Queue<>()};
+
+        Segment(int maximumSize, LongAdder evictions) {
+            this.evictions = evictions;
+            maximumWindow = Math.max(1, maximumSize / 100);
+            maximumMain = maximumSize - maximumWindow;
+            maximumProtected = maximumMain * 4 / 5;
+            sketch = new FrequencySketch(maximumSize);
+            map.ensureCapacity(maximumSize);
+        }
+
+        V get(String key, int hash) {
+            lock();
+            try {
+                sketch.increment(hash);
+                Node<V> node = map.get(key);
+                if (node == null) {
+                    return null;
+                }
+                onAccess(node);
+                return node.value;
+            } finally {
+                unlock();
+            }
+        }
+
+        void put(String key, int hash, V value) {
+            lock();
+            try {
+                Node<V> node = map.get(key);
+                if (node != null) {
+                    node.value = value;
+                    onAccess(node);
+                    return;
+                }
+                node = new Node<>(key, hash, value);
+                map.put(key, node);
+                node.queue = WINDOW;
+                queues[WINDOW].addLast(node);
+                if (queues[WINDOW].size > maximumWindow) {
+                    admit(queues[WINDOW].first());
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        void remove(String key) {
+            lock();
+            try {
+                Node<V> node = map.remove(key);
+                if (node != null) {
+                    queues[node.queue].unlink(node);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                map.clear();
+                for (Queue<V> queue : queues) {
+                    queue.clear();
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        int size() {
+            lock();
+            try {
+                return map.size();
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Moves a hit node to the back of its queue, promoting it from probation to protected.
+         */
+        private void onAccess(Node<V> node) {
+            queues[node.queue].unlink(node);
+            if (node.queue == PROBATION) {
+                node.queue = PROTECTED;
+                queues[PROTECTED].addLast(node);
+                if (queues[PROTECTED].size > maximumProtected) {
+                    Node<V> demoted = queues[PROTECTED].first();
+                    queues[PROTECTED].unlink(demoted);
+                    demoted.queue = PROBATION;
+                    queues[PROBATION].addLast(demoted);
+                }
+            } else {
+                queues[node.queue].addLast(node);
+            }
+        }
+
+        /**
+         * Moves candidate from the window to probation if main has room, or if it is requested
+         * more often than the next victim of main; otherwise evicts candidate.
+         */
+        private void admit(Node<V> candidate) {
+            queues[WINDOW].unlink(candidate);
+            if (queues[PROBATION].size + queues[PROTECTED].size < maximumMain) {
+                candidate.queue = PROBATION;
+                queues[PROBATION].addLast(candidate);
+                return;
+            }
+            Node<V> victim = queues[PROBATION].first();
+            if (victim == null) {
+                victim = queues[PROTECTED].first();
+            }
+            if (victim != null && sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                queues[victim.queue].unlink(victim);
+                map.remove(victim.key);
+                candidate.queue = PROBATION;
+                queues[PROBATION].addLast(candidate);
+            } else {
+                map.remove(candidate.key);
+            }
+            evictions.increment();
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters estimating how often each hash has been seen.
+     * <p>
+     * Each {@code long} packs sixteen counters. A hash is counted in four counters chosen by four
+     * independent rehashes, and its frequency is the minimum of them, which overestimates only
+     * when all four collide with other keys. After ten increments per counter slot of the cache,
+     * every counter is halved, so that the estimates follow recent traffic.
+     */
+    static final class FrequencySketch {
+
+        // The multipliers of the four rehashes.
+        private static final int[] SEEDS = {0x97cb3127, 0xbe98f273, 0x2f90404f, 0x84222325};
+
+        // Keeps the low three bits of every counter after shifting right by one.
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        /**
+         * @param maximumSize the number of entries whose frequencies must be told apart
+         */
+        FrequencySketch(int maximumSize) {
+            int length = 1;
+            while (length < maximumSize) {
+                length <<= 1;
+            }
+            table = new long[length];
+            sampleSize = 10 * Math.max(1, maximumSize);
+        }
+
+        private static int rehash(int hash, int i) {
+            int h = (hash + SEEDS[i]) * SEEDS[i];
+            return h ^ (h >>> 15);
+        }
+
+        /**
+         * Counts one more occurrence of hash.
+         */
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int h = rehash(hash, i);
+                int index = h & (table.length - 1);
+                int shift = ((h >>> 28) & 15) << 2;
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        /**
+         * @return the estimated number of occurrences of hash, at most 15
+         */
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int h = rehash(hash, i);
+                int index = h & (table.length - 1);
+                int shift = ((h >>> 28) & 15) << 2;
+                frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 15));
+            }
+            return frequency;
+        }
+
+        /**
+         * Halves every counter.
+         */
+        void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+    }
+}
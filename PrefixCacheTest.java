@@ -0,0 +1,103 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class PrefixCacheTest {
+
+    @Test
+    public void testGetPut() {
+        PrefixCache<Integer> myCache = new PrefixCache<Integer>(10);
+        assertNull(myCache.get("ch"));
+        myCache.put("ch", 3);
+        myCache.put("b", 2);
+        assertEquals((Integer) 3, myCache.get("ch"));
+        myCache.put("ch", 4);
+        assertEquals((Integer) 4, myCache.get("ch"));
+        assertEquals(2, myCache.size());
+        assertEquals(2, myCache.hitCount());
+        assertEquals(1, myCache.missCount());
+        assertEquals(0, myCache.evictionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalMaximumSize() {
+        new PrefixCache<Integer>(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNullValue() {
+        new PrefixCache<Integer>(10).put("ch", null);
+    }
+
+    @Test
+    public void testInvalidatePrefixesOf() {
+        PrefixCache<Integer> myCache = new PrefixCache<Integer>(10);
+        for (String prefix : Arrays.asList("", "c", "ch", "cha", "chb", "b")) {
+            myCache.put(prefix, prefix.length());
+        }
+        myCache.invalidatePrefixesOf("chat");
+        assertNull(myCache.get(""));
+        assertNull(myCache.get("c"));
+        assertNull(myCache.get("cha"));
+        assertEquals((Integer) 3, myCache.get("chb"));
+        assertEquals((Integer) 1, myCache.get("b"));
+        assertEquals(2, myCache.size());
+        assertEquals(0, myCache.evictionCount());
+    }
+
+    @Test
+    public void testMaximumSize() {
+        for (int maximumSize : new int[] {1, 7, 100, 5000}) {
+            PrefixCache<Integer> myCache = new PrefixCache<Integer>(maximumSize);
+            for (int keyNum = 0; keyNum < 3 * maximumSize + 10; keyNum++) {
+                myCache.put("key" + keyNum, keyNum);
+                assertTrue(myCache.size() <= maximumSize);
+            }
+            assertEquals(3 * maximumSize + 10 - myCache.size(), myCache.evictionCount());
+        }
+    }
+
+    @Test
+    public void testScanDoesNotFlushPopularPrefixes() {
+        PrefixCache<Integer> myCache = new PrefixCache<Integer>(100);
+        for (int round = 0; round < 5; round++) {
+            for (int keyNum = 0; keyNum < 50; keyNum++) {
+                if (myCache.get("hot" + keyNum) == null) {
+                    myCache.put("hot" + keyNum, keyNum);
+                }
+            }
+        }
+        // Every prefix of the scan is requested once, then cached
+        for (int keyNum = 0; keyNum < 10000; keyNum++) {
+            if (myCache.get("scan" + keyNum) == null) {
+                myCache.put("scan" + keyNum, keyNum);
+            }
+        }
+        int hits = 0;
+        for (int keyNum = 0; keyNum < 50; keyNum++) {
+            if (myCache.get("hot" + keyNum) != null) {
+                hits++;
+            }
+        }
+        assertTrue("only " + hits + " popular prefixes survived", hits >= 45);
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        PrefixCache.FrequencySketch sketch = new PrefixCache.FrequencySketch(64);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+        assertEquals(5, sketch.frequency(42));
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(7);
+        }
+        // Counters saturate at 15
+        assertEquals(15, sketch.frequency(7));
+        sketch.reset();
+        assertEquals(2, sketch.frequency(42));
+        assertEquals(7, sketch.frequency(7));
+    }
+}
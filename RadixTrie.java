@@ -0,0 +1,609 @@
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * A path-compressed (radix) implementation of {@link ITrie}. Where {@link Trie} spends one node
+ * per character, a chain of nodes that have a single child and no value is collapsed here into a
+ * single edge labelled with the whole run of characters. A long word like "charmeleon" therefore
+ * costs one node past the point where it branches off from its neighbours.
+ * <p>
+ * Keys, values and the meaning of {@code H} follow the same conventions as {@link Trie}. Here
+ * {@code N} counts compressed nodes, of which there are fewer than twice the number of keys.
+ * <p>
+ * A radix trie constructed with a weigher is weighted, and supports
+ * {@link #topValuesWithPrefix(CharSequence, int)} in the same way as a weighted {@link Trie}, so
+ * it can back an {@link Autocomplete} in place of one.
+ *
+ * @param <V> the type of mapped values
+ */
+public class RadixTrie<V> implements IRankedTrie<V> {
+
+    /**
+     * The root node of the trie. Its label is always empty.
+     */
+    private Node<V> root;
+
+    /**
+     * The size of the trie.
+     */
+    private int size;
+
+    /**
+     * Maps values to their weights, or null if this trie is not weighted.
+     */
+    private final ToLongFunction<? super V> weigher;
+
+    /**
+     * Constructs an empty RadixTrie.
+     */
+    public RadixTrie() {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty weighted RadixTrie.
+     *
+     * @param weigher maps each value to its weight, or null for an unweighted trie
+     */
+    public RadixTrie(ToLongFunction<? super V> weigher) {
+        this.weigher = weigher;
+        root = new Node<>("");
+    }
+
+    /**
+     * Returns the root node that represents the RadixTrie
+     */
+    public Node<V> getRoot() {
+        return root;
+    }
+
+    /**
+     * Checks that a key or prefix is non-null and consists entirely of lowercase letters.
+     *
+     * @throws IllegalArgumentException if the key is null or contains other characters
+     */
+    private static void checkKey(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 'a' || c > 'z') {
+                throw new IllegalArgumentException("Character must be in the range [a..z]");
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the longest common prefix of label and the suffix of key starting
+     * at from.
+     */
+    private static int commonPrefixLength(String label, CharSequence key, int from) {
+        int i = 0;
+        while (i < label.length() && from + i < key.length()
+                && label.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if either the specified key or value is null
+     * or if the key contains characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V put(CharSequence key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        return putHelper(root, key, 0, value);
+    }
+
+    private V putHelper(Node<V> currentNode, CharSequence key, int depth, V value) {
+        V previousValue;
+        if (depth == key.length()) {
+            previousValue = currentNode.value;
+            if (previousValue == null) {
+                size++;
+            }
+            currentNode.value = value;
+        } else {
+            char currentChar = key.charAt(depth);
+            Node<V> childNode = currentNode.getChild(currentChar);
+            if (childNode == null) {
+                childNode = new Node<>(key.subSequence(depth, key.length()).toString());
+                childNode.value = value;
+                childNode.valueCount = 1;
+                updateMaxWeight(childNode);
+                currentNode.setChild(currentChar, childNode);
+                size++;
+                previousValue = null;
+            } else {
+                int common = commonPrefixLength(childNode.label, key, depth);
+                if (common < childNode.label.length()) {
+                    // The key leaves this edge part way along, so split it
+                    Node<V> splitNode = new Node<>(childNode.label.substring(0, common));
+                    childNode.label = childNode.label.substring(common);
+                    splitNode.setChild(childNode.label.charAt(0), childNode);
+                    splitNode.valueCount = childNode.valueCount;
+                    splitNode.maxWeight = childNode.maxWeight;
+                    currentNode.setChild(currentChar, splitNode);
+                    childNode = splitNode;
+                }
+                previousValue = putHelper(childNode, key, depth + common, value);
+            }
+        }
+        if (previousValue == null) {
+            currentNode.valueCount++;
+        }
+        updateMaxWeight(currentNode);
+        return previousValue;
+    }
+
+    /**
+     * Recomputes the maximum subtree weight of a node from its value and its children.
+     */
+    private void updateMaxWeight(Node<V> node) {
+        if (weigher == null) {
+            return;
+        }
+        long max = node.hasValue() ? weigher.applyAsLong(node.value) : Long.MIN_VALUE;
+        for (Node<V> child : node.children) {
+            if (child.maxWeight > max) {
+                max = child.maxWeight;
+            }
+        }
+        node.maxWeight = max;
+    }
+
+    /**
+     * Returns the node whose key is exactly key, or null if there is none.
+     */
+    private Node<V> findNode(CharSequence key) {
+        Node<V> currentNode = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            Node<V> childNode = currentNode.getChild(key.charAt(depth));
+            if (childNode == null
+                    || commonPrefixLength(childNode.label, key, depth) < childNode.label.length()) {
+                return null;
+            }
+            depth += childNode.label.length();
+            currentNode = childNode;
+        }
+        return currentNode;
+    }
+
+    /**
+     * Returns the highest node whose subtree holds exactly the keys that have prefix as a
+     * prefix, or null if there are no such keys. The prefix may end part way along the returned
+     * node's edge.
+     */
+    private Node<V> findPrefixNode(CharSequence prefix) {
+        Node<V> currentNode = root;
+        int depth = 0;
+        while (depth < prefix.length()) {
+            Node<V> childNode = currentNode.getChild(prefix.charAt(depth));
+            if (childNode == null) {
+                return null;
+            }
+            int common = commonPrefixLength(childNode.label, prefix, depth);
+            if (depth + common == prefix.length()) {
+                return childNode;
+            }
+            if (common < childNode.label.length()) {
+                return null;
+            }
+            depth += common;
+            currentNode = childNode;
+        }
+        return currentNode;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V get(CharSequence key) {
+        checkKey(key);
+        Node<V> node = findNode(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public boolean containsKey(CharSequence key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified value is null
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException();
+        }
+        Deque<Node<V>> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node<V> curr = stack.pop();
+            if (curr.hasValue() && curr.value.equals(value)) {
+                return true;
+            }
+            for (Node<V> child : curr.children) {
+                stack.push(child);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public V remove(CharSequence key) {
+        checkKey(key);
+        return removeHelper(root, key, 0);
+    }
+
+    private V removeHelper(Node<V> currentNode, CharSequence key, int depth) {
+        V removedValue;
+        if (depth == key.length()) {
+            removedValue = currentNode.value;
+            if (removedValue == null) {
+                return null;
+            }
+            currentNode.value = null;
+            size--;
+        } else {
+            char currentChar = key.charAt(depth);
+            Node<V> childNode = currentNode.getChild(currentChar);
+            if (childNode == null
+                    || commonPrefixLength(childNode.label, key, depth) < childNode.label.length()) {
+                return null;
+            }
+            removedValue = removeHelper(childNode, key, depth + childNode.label.length());
+            if (removedValue == null) {
+                return null;
+            }
+            if (!childNode.hasValue()) {
+                if (childNode.children.length == 0) {
+                    currentNode.setChild(currentChar, null);
+                } else if (childNode.children.length == 1) {
+                    // Merge the emptied node into its only child to keep the trie compressed
+                    Node<V> grandchild = childNode.children[0];
+                    grandchild.label = childNode.label + grandchild.label;
+                    currentNode.setChild(currentChar, grandchild);
+                }
+            }
+        }
+        currentNode.valueCount--;
+        updateMaxWeight(currentNode);
+        return removedValue;
+    }
+
+    /**
+     * @implSpec This method should run in O(1) time.
+     */
+    @Override
+    public void clear() {
+        root = new Node<>("");
+        size = 0;
+    }
+
+    /**
+     * Returns the number of values whose keys have prefix as a prefix
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the number of entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    @Override
+    public int countPrefixes(CharSequence prefix) {
+        checkKey(prefix);
+        Node<V> node = findPrefixNode(prefix);
+        return node == null ? 0 : node.valueCount;
+    }
+
+    /**
+     * Returns a list of values of all entries whose key has prefix as a prefix, in lexicographic
+     * order of their keys
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return the value of all entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public List<V> allValuesWithPrefix(CharSequence prefix) {
+        checkKey(prefix);
+        Node<V> node = findPrefixNode(prefix);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<V> values = new ArrayList<>(node.valueCount);
+        collectValues(node, values);
+        return values;
+    }
+
+    private void collectValues(Node<V> node, List<V> values) {
+        if (node.hasValue()) {
+            values.add(node.value);
+        }
+        for (Node<V> child : node.children) {
+            collectValues(child, values);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs the same best-first search as {@link Trie#topValuesWithPrefix(CharSequence, int)}.
+     *
+     * @implSpec This method should run in O(H + k * log k) time.
+     */
+    @Override
+    public List<V> topValuesWithPrefix(CharSequence prefix, int k) {
+        checkKey(prefix);
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (weigher == null) {
+            throw new IllegalStateException("Trie is not weighted");
+        }
+        Node<V> node = findPrefixNode(prefix);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<V> values = new ArrayList<>();
+        PriorityQueue<Candidate<V>> frontier = new PriorityQueue<>();
+        frontier.add(new Candidate<>(node, null, node.maxWeight));
+        while (!frontier.isEmpty() && values.size() < k) {
+            Candidate<V> best = frontier.poll();
+            if (best.node == null) {
+                values.add(best.value);
+                continue;
+            }
+            if (best.node.hasValue()) {
+                frontier.add(new Candidate<>(null, best.node.value,
+                        weigher.applyAsLong(best.node.value)));
+            }
+            for (Node<V> child : best.node.children) {
+                frontier.add(new Candidate<>(child, null, child.maxWeight));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * An entry in the frontier of the best-first search: either an unexpanded node, bounded by
+     * the maximum weight in its subtree, or a single value with its own weight.
+     */
+    private static final class Candidate<V> implements Comparable<Candidate<V>> {
+        private final Node<V> node;
+        private final V value;
+        private final long weight;
+
+        Candidate(Node<V> node, V value, long weight) {
+            this.node = node;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate<V> that) {
+            return Long.compare(that.weight, weight);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Entries are produced lazily in lexicographic order of their keys.
+     *
+     * @implSpec This method should run in O(N) time.
+     */
+    @Override
+    public Iterator<Map.Entry<CharSequence, V>> entryIterator() {
+        return new EntryIterator();
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<CharSequence, V>> {
+        private final Deque<Node<V>> nodes = new ArrayDeque<>();
+        private final Deque<Integer> keyLengths = new ArrayDeque<>();
+        private final StringBuilder key = new StringBuilder();
+        private Map.Entry<CharSequence, V> next;
+
+        EntryIterator() {
+            nodes.push(root);
+            keyLengths.push(0);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                Node<V> node = nodes.pop();
+                key.setLength(keyLengths.pop());
+                key.append(node.label);
+                for (int i = node.children.length - 1; i >= 0; i--) {
+                    nodes.push(node.children[i]);
+                    keyLengths.push(key.length());
+                }
+                if (node.hasValue()) {
+                    next = new AbstractMap.SimpleImmutableEntry<>(key.toString(), node.value);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<CharSequence, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<CharSequence, V> result = next;
+            advance();
+            return result;
+        }
+    }
+
+    /**
+     * Node class for the RadixTrie
+     * <p>
+     * Each node carries the label of the edge leading into it. Children are keyed by the first
+     * character of their label and stored as in {@link Trie.Node}: an occupancy bitmap plus an
+     * array of the present children in alphabetical order.
+     */
+    static class Node<V> {
+
+        @SuppressWarnings("unchecked")
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private String label;
+        private V value;
+        private int childMask;
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = NO_CHILDREN;
+        private long maxWeight = Long.MIN_VALUE;
+        private int valueCount;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the label of the edge leading into this node.
+         *
+         * @return the label of the edge leading into this node
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * Returns the children of this node in alphabetical order of their labels.
+         */
+        public Node<V>[] getChildren() {
+            return children;
+        }
+
+        /**
+         * Retrieves the child whose label starts with the specified character, or {@code null}
+         * if there is no such child.
+         *
+         * @param c the first character of the child's label, a lowercase letter
+         * @return the child for the specified character, or {@code null} if there is none
+         */
+        public Node<V> getChild(char c) {
+            int bit = 1 << (c - 'a');
+            if ((childMask & bit) == 0) {
+                return null;
+            }
+            return children[Integer.bitCount(childMask & (bit - 1))];
+        }
+
+        /**
+         * Sets, replaces or (when node is null) removes the child whose label starts with the
+         * specified character.
+         *
+         * @param c    the first character of the child's label, a lowercase letter
+         * @param node the node to add as a child, or null to remove the child
+         */
+        @SuppressWarnings("unchecked")
+        public void setChild(char c, Node<V> node) {
+            int bit = 1 << (c - 'a');
+            int slot = Integer.bitCount(childMask & (bit - 1));
+            if ((childMask & bit) != 0) {
+                if (node != null) {
+                    children[slot] = node;
+                    return;
+                }
+                Node<V>[] shrunk = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+                System.arraycopy(children, 0, shrunk, 0, slot);
+                System.arraycopy(children, slot + 1, shrunk, slot, children.length - slot - 1);
+                children = shrunk;
+                childMask &= ~bit;
+            } else if (node != null) {
+                Node<V>[] grown = new Node[children.length + 1];
+                System.arraycopy(children, 0, grown, 0, slot);
+                grown[slot] = node;
+                System.arraycopy(children, slot, grown, slot + 1, children.length - slot);
+                children = grown;
+                childMask |= bit;
+            }
+        }
+
+        /**
+         * Returns {@code true} if this node has a value.
+         *
+         * @return {@code true} if this node has a value
+         */
+        public boolean hasValue() {
+            return value != null;
+        }
+
+        /**
+         * Returns the value at this node.
+         *
+         * @return the value at this node
+         */
+        public V getValue() {
+            return value;
+        }
+
+        /**
+         * Returns the number of values in this node's subtree, including its own value.
+         *
+         * @return the number of values in this node's subtree
+         */
+        public int getValueCount() {
+            return valueCount;
+        }
+
+        /**
+         * Returns the maximum weight of the values in this node's subtree, or
+         * {@code Long.MIN_VALUE} if the trie is not weighted or the subtree is empty.
+         *
+         * @return the maximum weight in this node's subtree
+         */
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.*;
+
+public class RadixTrieTest {
+
+    @Test
+    public void testPutAndGet() {
+        RadixTrie<String> myTrie = new RadixTrie<>();
+        assertNull(myTrie.put("mudit", "isa"));
+        assertEquals("isa", myTrie.get("mudit"));
+        assertNull(myTrie.get("mud"));
+        assertNull(myTrie.get("mudits"));
+        assertEquals(1, myTrie.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNullKey() {
+        RadixTrie<String> myTrie = new RadixTrie<>();
+        myTrie.put(null, "isa");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNullValue() {
+        RadixTrie<String> myTrie = new RadixTrie<>();
+        myTrie.put("mudit", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetInvalidKey() {
+        RadixTrie<String> myTrie = new RadixTrie<>();
+        myTrie.get("Hello");
+    }
+
+    @Test
+    public void testPutValueExisted() {
+        RadixTrie<String> myTrie = new RadixTrie<>();
+        assertNull(myTrie.put("isa", "mudit"));
+        assertEquals("mudit", myTrie.put("isa", "bro bear"));
+        assertEquals(1, myTrie.size());
+    }
+
+    @Test
+    public void testEdgesAreCompressedAndSplit() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("charmeleon", 1);
+        RadixTrie.Node<Integer> root = myTrie.getRoot();
+        assertEquals(1, root.getChildren().length);
+        assertEquals("charmeleon", root.getChild('c').getLabel());
+        myTrie.put("charmander", 2);
+        myTrie.put("char", 3);
+        RadixTrie.Node<Integer> split = root.getChild('c');
+        assertEquals("char", split.getLabel());
+        assertEquals((Integer) 3, split.getValue());
+        assertEquals("m", split.getChild('m').getLabel());
+        assertEquals(3, myTrie.size());
+    }
+
+    @Test
+    public void testRemoveMergesEdges() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("charmeleon", 1);
+        myTrie.put("charmander", 2);
+        assertNull(myTrie.remove("char"));
+        assertEquals((Integer) 2, myTrie.remove("charmander"));
+        assertEquals("charmeleon", myTrie.getRoot().getChild('c').getLabel());
+        assertEquals((Integer) 1, myTrie.get("charmeleon"));
+        assertEquals((Integer) 1, myTrie.remove("charmeleon"));
+        assertTrue(myTrie.isEmpty());
+        assertEquals(0, myTrie.getRoot().getChildren().length);
+    }
+
+    @Test
+    public void testContainsValue() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("mudit", 1);
+        myTrie.put("isa", 2);
+        myTrie.put("arvind", 1210);
+        assertTrue(myTrie.containsValue(1210));
+        assertFalse(myTrie.containsValue(1600));
+    }
+
+    @Test
+    public void testCountPrefixes() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 1);
+        myTrie.put("ban", 1);
+        myTrie.put("apple", 2);
+        myTrie.put("app", 3);
+        myTrie.put("oatmeal", 4);
+        myTrie.put("arvind", 1210);
+        assertEquals(3, myTrie.countPrefixes("ba"));
+        assertEquals(2, myTrie.countPrefixes("bana"));
+        assertEquals(3, myTrie.countPrefixes("a"));
+        assertEquals(1, myTrie.countPrefixes("oat"));
+        assertEquals(0, myTrie.countPrefixes("canada"));
+        assertEquals(0, myTrie.countPrefixes("oats"));
+        assertEquals(7, myTrie.countPrefixes(""));
+    }
+
+    @Test
+    public void testAllValuesWithPrefix() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("apple", 2);
+        myTrie.put("app", 3);
+        myTrie.put("arvind", 1210);
+        myTrie.put("antarctica", 1210);
+        assertEquals(Arrays.asList(7, 9, 1), myTrie.allValuesWithPrefix("ba"));
+        assertEquals(Arrays.asList(1210, 3, 2, 1210), myTrie.allValuesWithPrefix("a"));
+        assertEquals(Collections.emptyList(), myTrie.allValuesWithPrefix("canada"));
+    }
+
+    @Test
+    public void testTopValuesWithPrefix() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>(Integer::longValue);
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("band", 4);
+        myTrie.put("apple", 2);
+        assertEquals(Arrays.asList(9, 7), myTrie.topValuesWithPrefix("ba", 2));
+        assertEquals(Arrays.asList(9, 1), myTrie.topValuesWithPrefix("bana", 5));
+        myTrie.remove("banan");
+        assertEquals(Arrays.asList(7, 4, 1), myTrie.topValuesWithPrefix("b", 5));
+    }
+
+    @Test
+    public void testEntryIterator() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("pen", 24);
+        myTrie.put("q", 17);
+        myTrie.put("party", 99);
+        myTrie.put("penguin", 2);
+        Iterator<Map.Entry<CharSequence, Integer>> it = myTrie.entryIterator();
+        List<String> keys = new ArrayList<>();
+        while (it.hasNext()) {
+            keys.add(it.next().getKey().toString());
+        }
+        assertEquals(Arrays.asList("party", "pen", "penguin", "q"), keys);
+    }
+
+    @Test
+    public void testClear() {
+        RadixTrie<Integer> myTrie = new RadixTrie<>();
+        myTrie.put("mudit", 1);
+        myTrie.put("isa", 2);
+        myTrie.clear();
+        assertTrue(myTrie.isEmpty());
+        assertNull(myTrie.get("mudit"));
+    }
+}
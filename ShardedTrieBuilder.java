@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a {@link Trie} of terms from a word bank file on several cores.
+ * <p>
+ * The file is split into byte ranges that end on line boundaries, and the ranges are parsed
+ * concurrently into shards keyed by the first letter of each word. One sub-trie per letter is
+ * then built concurrently, keeping file order within the letter, and the sub-tries are grafted
+ * under the root of the target trie. Since no key occurs in two shards and each shard sees its
+ * keys in file order, the result is identical to inserting every line in order with
+ * {@link Trie#put(CharSequence, Object)}, as long as every word is valid.
+ * <p>
+ * Every word is checked before anything is grafted, so a word bank with an invalid word leaves
+ * the target trie empty, whereas inserting line by line would keep the lines before that word.
+ */
+final class ShardedTrieBuilder {
+
+    /**
+     * The number of byte ranges per worker thread, so that uneven ranges still balance out.
+     */
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * Words that do not start with a lowercase letter are collected in this extra shard. The
+     * parser never produces an empty word, so any word here would be rejected by {@code put}.
+     */
+    private static final int OTHER = 26;
+
+    private ShardedTrieBuilder() {
+    }
+
+    /**
+     * Loads the word bank with the specified file name into trie, which must be empty. If a word
+     * is invalid, trie is left empty.
+     *
+     * @param filename the word bank file
+     * @param trie     the empty trie to fill
+     * @param pool     the pool that runs the parse and build tasks
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if a word contains characters that are not letters
+     */
+    static void build(String filename, Trie<ITerm> trie, ForkJoinPool pool) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(filename));
+        int start = 0;
+        while (start < bytes.length && bytes[start] != '\n') {
+            start++;
+        }
+        start++;
+        if (start >= bytes.length) {
+            return;
+        }
+
+        int rangeCount = Math.max(1, pool.getParallelism() * RANGES_PER_THREAD);
+        List<ParseTask> parses = new ArrayList<>();
+        int rangeLength = (bytes.length - start + rangeCount - 1) / rangeCount;
+        while (start < bytes.length) {
+            int end = Math.min(bytes.length, start + rangeLength);
+            while (end < bytes.length && bytes[end - 1] != '\n') {
+                end++;
+            }
+            parses.add(new ParseTask(bytes, start, end));
+            start = end;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(parses);
+            }
+        });
+        for (ParseTask parse : parses) {
+            if (parse.shards[OTHER] != null) {
+                throw new IllegalArgumentException("Character must be in the range [a..z]");
+            }
+        }
+
+        List<BuildTask> builds = new ArrayList<>();
+        for (int letter = 0; letter < OTHER; letter++) {
+            List<Shard> shards = new ArrayList<>();
+            for (ParseTask parse : parses) {
+                if (parse.shards[letter] != null) {
+                    shards.add(parse.shards[letter]);
+                }
+            }
+            if (!shards.isEmpty()) {
+                builds.add(new BuildTask((char) ('a' + letter), shards, trie));
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(builds);
+            }
+        });
+
+        // Every sub-trie was built, so every word is valid
+        for (BuildTask build : builds) {
+            trie.graft(build.letter, build.result);
+        }
+    }
+
+    /**
+     * The entries of one byte range that start with one letter, in file order.
+     */
+    private static final class Shard {
+        private final List<String> words = new ArrayList<>();
+        private long[] weights = new long[16];
+        private int size;
+
+        void add(String word, long weight) {
+            if (size == weights.length) {
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            words.add(word);
+            weights[size++] = weight;
+        }
+    }
+
+    /**
+     * Parses one byte range into shards by first letter.
+     */
+    @SuppressWarnings("serial")
+    private static final class ParseTask extends RecursiveAction {
+        private final byte[] bytes;
+        private final int from;
+        private final int to;
+        private final Shard[] shards = new Shard[OTHER + 1];
+
+        ParseTask(byte[] bytes, int from, int to) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            new WordBankParser().parseLines(bytes, from, to, true, (word, weight) -> {
+                char first = word.length() == 0 ? 0 : word.charAt(0);
+                int letter = first >= 'a' && first <= 'z' ? first - 'a' : OTHER;
+                if (shards[letter] == null) {
+                    shards[letter] = new Shard();
+                }
+                shards[letter].add(word.toString(), weight);
+            });
+        }
+    }
+
+    /**
+     * Builds the sub-trie of the words starting with one letter.
+     */
+    @SuppressWarnings("serial")
+    private static final class BuildTask extends RecursiveAction {
+        private final char letter;
+        private final List<Shard> shards;
+        private final Trie<ITerm> result;
+
+        BuildTask(char letter, List<Shard> shards, Trie<ITerm> target) {
+            this.letter = letter;
+            this.shards = shards;
+            this.result = new Trie<>(target.getWeigher());
+        }
+
+        @Override
+        protected void compute() {
+            try (Trie<ITerm>.Loader loader = result.loader()) {
+                for (Shard shard : shards) {
+                    for (int i = 0; i < shard.size; i++) {
+                        String word = shard.words.get(i);
+                        loader.put(word, new Term(word, shard.weights[i]));
+                    }
+                }
+            }
+        }
+    }
+}
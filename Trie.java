@@ -1,4 +1,9 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
 
 /**
  * <p>
@@ -17,10 +22,14 @@ import java.util.*;
  * Null keys are not permitted because keys correspond directly to paths in a trie. Null values are
  * not permitted because rather than using a sentinel node, the implementation uses null to
  * indicate that a node does not have an associated value.
+ * <p>
+ * A trie constructed with a weigher is <em>weighted</em>: every node additionally records the
+ * largest weight found anywhere in its subtree, which lets {@link #topValuesWithPrefix(CharSequence,
+ * int)} expand only the branches that can still contribute to the answer.
  *
  * @param <V> the type of mapped values
  */
-public class Trie<V> implements ITrie<V> {
+public class Trie<V> implements IRankedTrie<V> {
 
     /**
      * The size of our key alphabet or character set. Here, we use 26 for the standard lowercase
@@ -30,6 +39,12 @@ public class Trie<V> implements ITrie<V> {
      */
     private static final int BRANCH_FACTOR = 26;
 
+    /**
+     * Subtrees holding at most this many values are traversed sequentially by the parallel
+     * operations, since forking tasks for them would cost more than it saves.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
     /**
      * The root node of the trie.
      */
@@ -48,13 +63,52 @@ public class Trie<V> implements ITrie<V> {
      */
     private int size;
 
+    /**
+     * Maps values to their weights, or null if this trie is not weighted.
+     */
+    private final ToLongFunction<? super V> weigher;
+
+    /**
+     * The length of the precomputed top lists, or 0 if nodes do not keep them.
+     */
+    private int topK;
+
+    /**
+     * The depth of the deepest nodes that keep a precomputed top list. The root is at depth 0.
+     */
+    private int topDepth;
+
+    /**
+     * The number of structural modifications, which add or remove nodes, so that a
+     * {@link Cursor} can tell when its path may be out of date.
+     */
+    private int modCount;
+
     /**
      * Constructs an empty Trie.
      */
     public Trie() {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty weighted Trie. Each node keeps the maximum weight of the values in its
+     * subtree, maintained by {@code put} and {@code remove}.
+     *
+     * @param weigher maps each value to its weight, or null for an unweighted trie
+     */
+    public Trie(ToLongFunction<? super V> weigher) {
+        this.weigher = weigher;
         root = new Node<>(null);
     }
 
+    /**
+     * Returns the function mapping values to their weights, or null if this trie is not weighted.
+     */
+    ToLongFunction<? super V> getWeigher() {
+        return weigher;
+    }
+
     /**
      * Converts a {@code char} into an array index.
      * <p>
@@ -125,7 +179,14 @@ public class Trie<V> implements ITrie<V> {
             throw new IllegalArgumentException();
         }
 
+        // Reject an invalid key before any node is created or any maximum is raised
+        for (int i = 0; i < key.length(); i++) {
+            convertToIndex(key.charAt(i));
+        }
+
+        long weight = weigher == null ? Long.MIN_VALUE : weigher.applyAsLong(value);
         Node currentNode = root;
+        currentNode.raiseMaxWeight(weight);
         for (int i = 0; i < key.length(); i++) {
             char currentChar = key.charAt(i);
             Node childNode = currentNode.getChild(currentChar);
@@ -134,16 +195,80 @@ public class Trie<V> implements ITrie<V> {
                 currentNode.setChild(currentChar, childNode);
             }
             currentNode = childNode;
+            currentNode.raiseMaxWeight(weight);
         }
         V previousValue = (V) currentNode.getValue();
 
         if (!currentNode.hasValue()) {
             size = size + 1;
+            modCount++;
+            incrementValueCounts(key);
         }
         currentNode.setValue(value);
+        // A lighter replacement may lower the maximum of every node on the path
+        if (weigher != null && previousValue != null
+                && weigher.applyAsLong(previousValue) > weight) {
+            refreshMaxWeights(key);
+        }
+        if (topK > 0) {
+            currentNode = root;
+            updateTopValues(currentNode, previousValue, value);
+            for (int i = 0; i < Math.min(key.length(), topDepth); i++) {
+                currentNode = currentNode.getChild(key.charAt(i));
+                updateTopValues(currentNode, previousValue, value);
+            }
+        }
         return previousValue;
     }
 
+    /**
+     * Increments the subtree value count of every node on the path to key, which must exist.
+     */
+    private void incrementValueCounts(CharSequence key) {
+        Node<V> currentNode = root;
+        currentNode.valueCount++;
+        for (int i = 0; i < key.length(); i++) {
+            currentNode = currentNode.getChild(key.charAt(i));
+            currentNode.valueCount++;
+        }
+    }
+
+    /**
+     * Recomputes the maximum subtree weight of every node on the path to key, bottom up.
+     */
+    private void refreshMaxWeights(CharSequence key) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            Node<V> currentNode = root;
+            stack.push(currentNode);
+            for (int i = 0; i < key.length(); i++) {
+                currentNode = currentNode.getChild(key.charAt(i));
+                stack.push(currentNode);
+            }
+            while (!stack.isEmpty()) {
+                updateMaxWeight(stack.pop());
+            }
+        } finally {
+            stack.release();
+        }
+    }
+
+    /**
+     * Recomputes the maximum subtree weight of a node from its value and its children.
+     */
+    private void updateMaxWeight(Node<V> node) {
+        if (weigher == null) {
+            return;
+        }
+        long max = node.hasValue() ? weigher.applyAsLong(node.getValue()) : Long.MIN_VALUE;
+        for (Node<V> child : node.getChildren()) {
+            if (child.getMaxWeight() > max) {
+                max = child.getMaxWeight();
+            }
+        }
+        node.setMaxWeight(max);
+    }
+
     /**
      * @throws IllegalArgumentException if the specified key is null or if the key contains
      * characters that are not lowercase letters
@@ -183,24 +308,7 @@ public class Trie<V> implements ITrie<V> {
         if (value == null) {
             throw new IllegalArgumentException();
         }
-        Stack<Node> stack = new Stack<>();
-        stack.push(root);
-        while (!stack.isEmpty()) {
-            Node curr = stack.pop();
-            if (curr != null) {
-                if (curr.hasValue() && curr.getValue().equals(value)) {
-                    return true;
-                }
-                if (curr.hasChildren()) {
-                    for (Node child : curr.getChildren()) {
-                        if (child != null) {
-                            stack.push(child);
-                        }
-                    }
-                }
-            }
-        }
-        return false;
+        return subtreeContains(root, value);
     }
 
 
@@ -218,32 +326,42 @@ public class Trie<V> implements ITrie<V> {
             throw new IllegalArgumentException("Key cannot be null.");
         }
 
-        return removeHelper(root, key, 0);
-    }
-
-    private V removeHelper(Node<V> currentNode, CharSequence key, int depth) {
-        if (currentNode == null) {
-            return null;
-        }
-        if (depth == key.length()) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            // Record the path, so that it can be updated bottom up without recursion
+            Node<V> currentNode = root;
+            stack.push(currentNode);
+            for (int i = 0; i < key.length(); i++) {
+                currentNode = currentNode.getChild(key.charAt(i));
+                if (currentNode == null) {
+                    return null;
+                }
+                stack.push(currentNode);
+            }
             if (!currentNode.hasValue()) {
                 return null;
             }
             V removedValue = currentNode.getValue();
             currentNode.setValue(null);
             size--;
-            if (!currentNode.hasChildren()) {
-                return removedValue;
+            modCount++;
+            Node<V> childNode = null;
+            for (int depth = key.length(); depth >= 0; depth--) {
+                currentNode = stack.pop();
+                if (childNode != null && !childNode.hasValue() && !childNode.hasChildren()) {
+                    currentNode.setChild(key.charAt(depth), null);
+                }
+                currentNode.valueCount--;
+                updateMaxWeight(currentNode);
+                if (depth <= topDepth && topK > 0) {
+                    updateTopValues(currentNode, removedValue, null);
+                }
+                childNode = currentNode;
             }
             return removedValue;
+        } finally {
+            stack.release();
         }
-        char currentChar = key.charAt(depth);
-        Node<V> childNode = currentNode.getChild(currentChar);
-        V removedValue = removeHelper(childNode, key, depth + 1);
-        if (childNode != null && !childNode.hasValue() && !childNode.hasChildren()) {
-            currentNode.setChild(currentChar, null);
-        }
-        return removedValue;
     }
 
 
@@ -253,6 +371,404 @@ public class Trie<V> implements ITrie<V> {
     public void clear() {
         root = new Node(null);
         size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns a new trie that maps key to value and is otherwise equal to this one, leaving this
+     * trie unchanged. Only the nodes on the path to key are copied; every other node is shared
+     * between the two tries. Since no shared node is ever modified, a trie that is only updated
+     * this way can be read by any number of threads while a writer derives new versions.
+     *
+     * @param key   the key
+     * @param value the value
+     * @return the new version of the trie
+     * @throws IllegalArgumentException if either the specified key or value is null
+     * or if the key contains characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    public Trie<V> withPut(CharSequence key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException();
+        }
+        Trie<V> copy = copyPath(key);
+        copy.put(key, value);
+        return copy;
+    }
+
+    /**
+     * Returns a new trie without the mapping for key and otherwise equal to this one, leaving
+     * this trie unchanged. As with {@link #withPut(CharSequence, Object)}, only the nodes on the
+     * path to key are copied.
+     *
+     * @param key the key
+     * @return the new version of the trie
+     * @throws IllegalArgumentException if the specified key is null or if the key contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     */
+    public Trie<V> withRemove(CharSequence key) {
+        if (key == null) {
+            throw new IllegalArgumentException();
+        }
+        Trie<V> copy = copyPath(key);
+        copy.remove(key);
+        return copy;
+    }
+
+    /**
+     * Returns a trie sharing this trie's nodes, except that the existing nodes on the path to
+     * key are replaced by copies. {@code put} and {@code remove} only modify nodes on the path
+     * to their key, so applying one to the result leaves this trie untouched.
+     */
+    private Trie<V> copyPath(CharSequence key) {
+        Trie<V> copy = new Trie<>(weigher);
+        copy.size = size;
+        copy.topK = topK;
+        copy.topDepth = topDepth;
+        copy.root = root.copy();
+        Node<V> currentNode = copy.root;
+        for (int i = 0; i < key.length(); i++) {
+            char currentChar = key.charAt(i);
+            Node<V> childNode = currentNode.getChild(currentChar);
+            if (childNode == null) {
+                break;
+            }
+            childNode = childNode.copy();
+            currentNode.setChild(currentChar, childNode);
+            currentNode = childNode;
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a loader for inserting many entries at once. Each key resumes from the deepest
+     * node it shares with the previous key instead of walking down from the root, so sorted
+     * input looks up each node on the shared prefix only once. Subtree counts and weights are
+     * updated through the remembered path; a weight that drops because a value was replaced by
+     * a lighter one is recomputed in one pass by {@link Loader#close()}. The trie must not be
+     * queried or modified by other means until the loader is closed.
+     *
+     * @return a loader that inserts into this trie
+     */
+    public Loader loader() {
+        return new Loader();
+    }
+
+    /**
+     * Bulk inserter returned by {@link #loader()}. Results are identical to calling
+     * {@link #put(CharSequence, Object)} for each entry in the same order.
+     */
+    public class Loader implements AutoCloseable {
+
+        /**
+         * path[i] is the node reached by the first i characters of the previous key.
+         */
+        @SuppressWarnings("unchecked")
+        private Node<V>[] path = new Node[16];
+        private final StringBuilder previous = new StringBuilder();
+        private boolean weightsStale;
+
+        private Loader() {
+            path[0] = root;
+        }
+
+        /**
+         * Associates the specified value with the specified key.
+         *
+         * @param key   the key
+         * @param value the value
+         * @return the previous value associated with key, or null if there was none
+         * @throws IllegalArgumentException if either the specified key or value is null
+         * or if the key contains characters that are not lowercase letters
+         */
+        public V put(CharSequence key, V value) {
+            if (key == null || value == null) {
+                throw new IllegalArgumentException();
+            }
+            // Reject an invalid key before any node is created, as put does
+            for (int i = 0; i < key.length(); i++) {
+                convertToIndex(key.charAt(i));
+            }
+            if (path.length <= key.length()) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, key.length() + 1));
+            }
+            int shared = 0;
+            int limit = Math.min(key.length(), previous.length());
+            while (shared < limit && key.charAt(shared) == previous.charAt(shared)) {
+                shared++;
+            }
+            Node<V> currentNode = path[shared];
+            previous.setLength(shared);
+            for (int i = shared; i < key.length(); i++) {
+                char currentChar = key.charAt(i);
+                Node<V> childNode = currentNode.getChild(currentChar);
+                if (childNode == null) {
+                    childNode = new Node<>(null);
+                    currentNode.setChild(currentChar, childNode);
+                }
+                currentNode = childNode;
+                path[i + 1] = currentNode;
+                previous.append(currentChar);
+            }
+            V previousValue = currentNode.getValue();
+            currentNode.setValue(value);
+            long weight = weigher == null ? Long.MIN_VALUE : weigher.applyAsLong(value);
+            for (int i = 0; i <= key.length(); i++) {
+                if (previousValue == null) {
+                    path[i].valueCount++;
+                }
+                path[i].raiseMaxWeight(weight);
+            }
+            if (previousValue == null) {
+                size++;
+                modCount++;
+            } else if (weigher != null && weigher.applyAsLong(previousValue) > weight) {
+                weightsStale = true;
+            }
+            return previousValue;
+        }
+
+        /**
+         * Finishes loading, recomputing subtree weights if any of them may have dropped, and
+         * the precomputed top lists, if any.
+         */
+        @Override
+        public void close() {
+            if (weightsStale) {
+                rebuildAnnotations(root);
+                weightsStale = false;
+            }
+            if (topK > 0) {
+                buildTopValues(root, 0);
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor positioned at the root, for following a prefix as it is typed one
+     * character at a time.
+     *
+     * @return a cursor over this trie
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A prefix together with the path of nodes it leads to, returned by {@link #cursor()}.
+     * Appending or removing the last character moves along a single edge, so the queries for
+     * each successive prefix cost no walk from the root.
+     * <p>
+     * The cursor stays valid while the trie is modified: when keys have been added or removed
+     * since the path was last followed, the next operation follows the prefix again from the
+     * root.
+     */
+    public class Cursor {
+
+        /**
+         * path[i] is the node reached by the first i characters of the prefix, for i up to
+         * matched.
+         */
+        @SuppressWarnings("unchecked")
+        private Node<V>[] path = new Node[16];
+
+        /**
+         * The number of leading characters of the prefix that lead to a node. The prefix has
+         * no keys under it unless this is its whole length.
+         */
+        private int matched;
+
+        private final StringBuilder prefix = new StringBuilder();
+        private int expectedModCount;
+
+        private Cursor() {
+            path[0] = root;
+            expectedModCount = modCount;
+        }
+
+        /**
+         * Appends a character to the prefix.
+         *
+         * @param c the character
+         * @throws IllegalArgumentException if c is not a lowercase letter
+         * @implSpec This method should run in O(1) time.
+         */
+        public void advance(char c) {
+            convertToIndex(c);
+            sync();
+            if (matched == prefix.length()) {
+                Node<V> child = path[matched].getChild(c);
+                if (child != null) {
+                    if (matched + 1 == path.length) {
+                        path = Arrays.copyOf(path, path.length * 2);
+                    }
+                    path[++matched] = child;
+                }
+            }
+            prefix.append(c);
+        }
+
+        /**
+         * Removes the last character of the prefix, if any.
+         *
+         * @return false if the prefix was already empty
+         * @implSpec This method should run in O(1) time.
+         */
+        public boolean retreat() {
+            if (prefix.length() == 0) {
+                return false;
+            }
+            sync();
+            if (matched == prefix.length()) {
+                path[matched--] = null;
+            }
+            prefix.setLength(prefix.length() - 1);
+            return true;
+        }
+
+        /**
+         * @return the current prefix
+         */
+        public String prefix() {
+            return prefix.toString();
+        }
+
+        /**
+         * @return the number of values whose keys have the current prefix as a prefix
+         * @implSpec This method should run in O(1) time.
+         */
+        public int countValues() {
+            sync();
+            return matched == prefix.length() ? path[matched].getValueCount() : 0;
+        }
+
+        /**
+         * @return the values of all entries whose key has the current prefix as a prefix, in
+         * lexicographic order of their keys
+         * @implSpec This method should run in O(N) time.
+         */
+        public List<V> allValues() {
+            sync();
+            List<V> values = new ArrayList<>();
+            if (matched == prefix.length()) {
+                collectValues(path[matched], values);
+            }
+            return values;
+        }
+
+        /**
+         * Returns the {@code k} heaviest values whose keys have the current prefix as a prefix,
+         * as {@link #topValuesWithPrefix(CharSequence, int)} would.
+         *
+         * @param k the maximum number of values to return
+         * @return at most k values whose key has the current prefix as a prefix, heaviest first
+         * @throws IllegalArgumentException if k is not positive
+         * @throws IllegalStateException if the trie is not weighted
+         * @implSpec This method should run in O(k * log k) time.
+         */
+        public List<V> topValues(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive: " + k);
+            }
+            if (weigher == null) {
+                throw new IllegalStateException("Trie is not weighted");
+            }
+            sync();
+            if (matched < prefix.length()) {
+                return Collections.emptyList();
+            }
+            return topValuesAt(path[matched], matched, k);
+        }
+
+        /**
+         * Follows the prefix again from the root if nodes have been added or removed since the
+         * path was followed.
+         */
+        private void sync() {
+            if (expectedModCount == modCount) {
+                return;
+            }
+            if (path.length <= prefix.length()) {
+                path = Arrays.copyOf(path, prefix.length() + 1);
+            }
+            Arrays.fill(path, null);
+            path[0] = root;
+            matched = 0;
+            while (matched < prefix.length()) {
+                Node<V> child = path[matched].getChild(prefix.charAt(matched));
+                if (child == null) {
+                    break;
+                }
+                path[++matched] = child;
+            }
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Moves every entry of shard into this trie. All keys of shard must start with c, and this
+     * trie must not yet contain any key starting with c, so the subtree of shard under c can be
+     * attached as it is. Used to stitch together sub-tries built in parallel; shard is left
+     * empty.
+     *
+     * @param c     the first character of every key in shard
+     * @param shard the trie whose entries are moved
+     * @throws IllegalArgumentException if shard has a key that does not start with c
+     * @throws IllegalStateException if this trie already has a key starting with c
+     * @implSpec This method should run in O(1) time.
+     */
+    void graft(char c, Trie<V> shard) {
+        Node<V> subtree = shard.root.getChild(c);
+        int expectedMask = subtree == null ? 0 : 1 << convertToIndex(c);
+        if (shard.root.hasValue() || shard.root.getChildMask() != expectedMask) {
+            throw new IllegalArgumentException("Every key must start with " + c);
+        }
+        if (subtree == null) {
+            return;
+        }
+        if (root.getChild(c) != null) {
+            throw new IllegalStateException("Trie already has keys starting with " + c);
+        }
+        root.setChild(c, subtree);
+        root.valueCount += subtree.getValueCount();
+        root.raiseMaxWeight(subtree.getMaxWeight());
+        if (topK > 0) {
+            if (topDepth > 0) {
+                buildTopValues(subtree, 1);
+            }
+            root.topValues = searchTopValues(root, topK).toArray();
+        }
+        size += shard.size;
+        modCount++;
+        shard.clear();
+    }
+
+    /**
+     * Recomputes the subtree value count and maximum weight of node and its descendants.
+     */
+    private void rebuildAnnotations(Node<V> node) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node<V> child = stack.nextChild();
+                if (child != null) {
+                    stack.push(child);
+                    continue;
+                }
+                // Every child of the node on top has been annotated
+                Node<V> current = stack.pop();
+                int count = current.hasValue() ? 1 : 0;
+                for (Node<V> c : current.getChildren()) {
+                    count += c.getValueCount();
+                }
+                current.valueCount = count;
+                updateMaxWeight(current);
+            }
+        } finally {
+            stack.release();
+        }
     }
 
     /**
@@ -283,25 +799,7 @@ public class Trie<V> implements ITrie<V> {
                 return 0;
             }
         }
-        return countValuesInSubtree(currentNode);
-    }
-
-    private int countValuesInSubtree(Node<V> node) {
-        if (node == null) {
-            return 0;
-        }
-        int count = 0;
-        if (node.hasValue()) {
-            count = 1;
-        }
-        if (node.hasChildren()) {
-            for (Node<V> child : node.getChildren()) {
-                if (child != null) {
-                    count += countValuesInSubtree(child);
-                }
-            }
-        }
-        return count;
+        return currentNode.getValueCount();
     }
 
     /**
@@ -338,51 +836,849 @@ public class Trie<V> implements ITrie<V> {
         if (node == null) {
             return;
         }
-        if (node.hasValue()) {
-            values.add(node.getValue());
-        }
-        if (node.hasChildren()) {
-            for (Node<V> child : node.getChildren()) {
-                collectValues(child, values);
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            stack.push(node);
+            for (Node<V> current = node; current != null; current = stack.next()) {
+                if (current.hasValue()) {
+                    values.add(current.getValue());
+                }
             }
+        } finally {
+            stack.release();
         }
     }
 
     /**
-     * {@inheritDoc}
-     * <p>
-     * The {@link CharSequence} keys of the {@link Map.Entry} instances in the resulting iteration
-     * are mutable and should not be referenced directly. Instead, one should call
-     * {@link CharSequence#toString()} on the key to get an immutable reference.
-     * <p>
-     * The iterator must produce entries in lexicographic order. For example, {@code ("party", 99),
-     * ("pen", 24), ("penguin", 2), ("q", 17)}
-     * <p>
-     * This method is for kudos, which is optional. To receive full kudos, your
-     * implementation must satisfy the asymptotic complexities for running time and space. An
-     * optimal implementation will use space proportional to at most the height of the trie.
+     * Returns the same list as {@link #allValuesWithPrefix(CharSequence)}, collected in parallel
+     * on the specified pool. Each node with more than one child and more values than a threshold
+     * forks one task per child. Since every subtree knows how many values it holds, each task
+     * writes its values straight into its own range of one result array, so no partial lists
+     * are merged and the order is the same as the sequential one.
      *
+     * @param prefix possible prefix of some keys in the trie
+     * @param pool   the pool that runs the tasks
+     * @return the value of all entries whose key has prefix as a prefix
+     * @throws IllegalArgumentException if the specified prefix or pool is null or if the prefix
+     * contains characters that are not lowercase letters
      * @implSpec This method should run in O(N) time.
-     * @implSpec This method should use O(H) space.
-     * @implNote For partial kudos, the space usage of this method can be relaxed to O(V).
-     * @implNote You will receive fake kudos if you dump all of the elements of the trie into a
-     * collection and return an iterator over that collection.
+     * @implSpec This method should use O(N) space.
      */
-    public Iterator<Map.Entry<CharSequence, V>> entryIterator() {
-        throw new UnsupportedOperationException("TODO: implement");
+    @SuppressWarnings("unchecked")
+    public List<V> allValuesWithPrefix(CharSequence prefix, ForkJoinPool pool) {
+        if (pool == null) {
+            throw new IllegalArgumentException();
+        }
+        Node<V> node = nodeAt(prefix);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        Object[] values = new Object[node.getValueCount()];
+        pool.invoke(new CollectTask(node, values, 0));
+        return new ArrayList<>((List<V>) Arrays.asList(values));
     }
 
+    /**
+     * Returns whether any key maps to the specified value, searching in parallel on the
+     * specified pool. Subtrees are split as in {@link #allValuesWithPrefix(CharSequence,
+     * ForkJoinPool)}, and tasks that have not started yet are skipped once a match is found.
+     *
+     * @param value the value to search for
+     * @param pool  the pool that runs the tasks
+     * @return true if some key maps to value
+     * @throws IllegalArgumentException if the specified value or pool is null
+     * @implSpec This method should run in O(N) time.
+     */
+    public boolean containsValue(Object value, ForkJoinPool pool) {
+        if (value == null || pool == null) {
+            throw new IllegalArgumentException();
+        }
+        AtomicBoolean found = new AtomicBoolean();
+        pool.invoke(new SearchTask(root, value, found));
+        return found.get();
+    }
+
+    /**
+     * Stores the values of a subtree, in key order, into values starting at offset.
+     */
+    @SuppressWarnings("serial")
+    private final class CollectTask extends RecursiveAction {
+        private final Node<V> node;
+        private final Object[] values;
+        private final int offset;
+
+        CollectTask(Node<V> node, Object[] values, int offset) {
+            this.node = node;
+            this.values = values;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            Node<V> current = node;
+            int index = offset;
+            while (current.getValueCount() > PARALLEL_THRESHOLD) {
+                if (current.hasValue()) {
+                    values[index++] = current.getValue();
+                }
+                Node<V>[] children = current.getChildren();
+                if (children.length > 1) {
+                    List<CollectTask> tasks = new ArrayList<>(children.length);
+                    for (Node<V> child : children) {
+                        tasks.add(new CollectTask(child, values, index));
+                        index += child.getValueCount();
+                    }
+                    invokeAll(tasks);
+                    return;
+                }
+                // A chain of single children is not worth a task per node
+                current = children[0];
+            }
+            collectValues(current, values, index);
+        }
+    }
+
+    /**
+     * Stores the values of the subtree of node, in key order, into values starting at index.
+     *
+     * @return the index after the last value stored
+     */
+    private int collectValues(Node<V> node, Object[] values, int index) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            stack.push(node);
+            for (Node<V> current = node; current != null; current = stack.next()) {
+                if (current.hasValue()) {
+                    values[index++] = current.getValue();
+                }
+            }
+            return index;
+        } finally {
+            stack.release();
+        }
+    }
+
+    /**
+     * Sets found if the subtree of node contains value.
+     */
+    @SuppressWarnings("serial")
+    private final class SearchTask extends RecursiveAction {
+        private final Node<V> node;
+        private final Object value;
+        private final AtomicBoolean found;
+
+        SearchTask(Node<V> node, Object value, AtomicBoolean found) {
+            this.node = node;
+            this.value = value;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            Node<V> current = node;
+            while (!found.get()) {
+                if (current.getValueCount() <= PARALLEL_THRESHOLD) {
+                    if (subtreeContains(current, value)) {
+                        found.set(true);
+                    }
+                    return;
+                }
+                if (current.hasValue() && current.getValue().equals(value)) {
+                    found.set(true);
+                    return;
+                }
+                Node<V>[] children = current.getChildren();
+                if (children.length > 1) {
+                    List<SearchTask> tasks = new ArrayList<>(children.length);
+                    for (Node<V> child : children) {
+                        tasks.add(new SearchTask(child, value, found));
+                    }
+                    invokeAll(tasks);
+                    return;
+                }
+                current = children[0];
+            }
+        }
+    }
+
+    /**
+     * Returns whether the subtree of node contains value.
+     */
+    private boolean subtreeContains(Node<V> node, Object value) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            stack.push(node);
+            for (Node<V> current = node; current != null; current = stack.next()) {
+                if (current.hasValue() && current.getValue().equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            stack.release();
+        }
+    }
+
+    /**
+     * Returns the {@code k} values whose keys have prefix as a prefix that come first under the
+     * specified order, sorted by that order. Fewer than {@code k} values are returned if the
+     * subtree does not contain that many.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @param k      the maximum number of values to return
+     * @param order  the order in which values are ranked, best first
+     * @return at most k values whose key has prefix as a prefix, sorted by order
+     * @throws IllegalArgumentException if the specified prefix or order is null, if k is not
+     * positive, or if the prefix contains characters that are not lowercase letters
+     * @implSpec This method should run in O(N log k) time.
+     * @implSpec This method should use O(k) space in addition to the traversal stack, which holds
+     * at most H levels and is reused between calls on the same thread.
+     */
+    public List<V> topValuesWithPrefix(CharSequence prefix, int k, Comparator<? super V> order) {
+        if (prefix == null || order == null) {
+            throw new IllegalArgumentException();
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        Node<V> currentNode = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            char currentChar = prefix.charAt(i);
+            currentNode = currentNode.getChild(currentChar);
+            if (currentNode == null) {
+                return Collections.emptyList();
+            }
+        }
+        // The head of the heap is the worst of the best k values seen so far
+        PriorityQueue<V> best = new PriorityQueue<>(Collections.reverseOrder(order));
+        collectTopValues(currentNode, k, order, best);
+        List<V> values = new ArrayList<>(best);
+        values.sort(order);
+        return values;
+    }
+
+    private void collectTopValues(Node<V> node, int k, Comparator<? super V> order,
+                                  PriorityQueue<V> best) {
+        TraversalStack<V> stack = TraversalStack.acquire();
+        try {
+            stack.push(node);
+            for (Node<V> current = node; current != null; current = stack.next()) {
+                if (!current.hasValue()) {
+                    continue;
+                }
+                if (best.size() < k) {
+                    best.add(current.getValue());
+                } else if (order.compare(current.getValue(), best.peek()) < 0) {
+                    best.poll();
+                    best.add(current.getValue());
+                }
+            }
+        } finally {
+            stack.release();
+        }
+    }
+
+    /**
+     * Returns the {@code k} heaviest values whose keys have prefix as a prefix, in descending
+     * order of weight. Fewer than {@code k} values are returned if the subtree does not contain
+     * that many.
+     * <p>
+     * The search is best-first: a frontier ordered by weight holds both unexpanded nodes, keyed
+     * by the maximum weight in their subtree, and values, keyed by their own weight. Whenever a
+     * value reaches the head of the frontier no remaining node can contain anything heavier, so
+     * it is emitted, and the search stops as soon as k values have been emitted.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @param k      the maximum number of values to return
+     * @return at most k values whose key has prefix as a prefix, heaviest first
+     * @throws IllegalArgumentException if the specified prefix is null, if k is not positive, or
+     * if the prefix contains characters that are not lowercase letters
+     * @throws IllegalStateException if this trie is not weighted
+     * @implSpec This method should run in O(H + k * log k) time.
+     * @implSpec This method should use O(k) space.
+     */
+    @Override
+    public List<V> topValuesWithPrefix(CharSequence prefix, int k) {
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (weigher == null) {
+            throw new IllegalStateException("Trie is not weighted");
+        }
+        Node<V> currentNode = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            char currentChar = prefix.charAt(i);
+            currentNode = currentNode.getChild(currentChar);
+            if (currentNode == null) {
+                return Collections.emptyList();
+            }
+        }
+        return topValuesAt(currentNode, prefix.length(), k);
+    }
+
+    /**
+     * Returns the k heaviest values in the subtree of node, which is at the specified depth,
+     * from its precomputed top list if it has a long enough one.
+     */
+    @SuppressWarnings("unchecked")
+    private List<V> topValuesAt(Node<V> node, int depth, int k) {
+        if (k <= topK && depth <= topDepth && node.topValues != null) {
+            Object[] top = node.topValues;
+            List<V> values = new ArrayList<>(Math.min(k, top.length));
+            for (int i = 0; i < top.length && i < k; i++) {
+                values.add((V) top[i]);
+            }
+            return values;
+        }
+        return searchTopValues(node, k);
+    }
+
+    /**
+     * Returns the k heaviest values in the subtree of node, heaviest first, by the best-first
+     * search described in {@link #topValuesWithPrefix(CharSequence, int)}.
+     */
+    private List<V> searchTopValues(Node<V> start, int k) {
+        List<V> values = new ArrayList<>();
+        PriorityQueue<Candidate<V>> frontier = new PriorityQueue<>();
+        frontier.add(new Candidate<>(start, null, start.getMaxWeight()));
+        while (!frontier.isEmpty() && values.size() < k) {
+            Candidate<V> best = frontier.poll();
+            if (best.node == null) {
+                values.add(best.value);
+                continue;
+            }
+            Node<V> node = best.node;
+            if (node.hasValue()) {
+                frontier.add(new Candidate<>(null, node.getValue(),
+                        weigher.applyAsLong(node.getValue())));
+            }
+            for (Node<V> child : node.getChildren()) {
+                frontier.add(new Candidate<>(child, null, child.getMaxWeight()));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Precomputes the answer of {@link #topValuesWithPrefix(CharSequence, int)} for every prefix
+     * of at most maxDepth characters: each node up to that depth stores its k heaviest values,
+     * heaviest first. Queries for those prefixes and at most k values then only walk the prefix
+     * and copy the list, and {@code put} and {@code remove} keep the lists of the nodes on their
+     * path up to date. Calling this again replaces the previous k and depth.
+     * <p>
+     * Each list costs an array of up to k references, and the number of nodes up to depth d
+     * grows quickly with d, so the depth trades memory for the latency of short prefixes, whose
+     * subtrees are the largest to search.
+     *
+     * @param k        the number of values to precompute per node
+     * @param maxDepth the length of the longest prefix to precompute
+     * @throws IllegalArgumentException if k is not positive or maxDepth is negative
+     * @throws IllegalStateException if this trie is not weighted
+     * @implSpec This method should run in O(M * k * log k) time, where M is the number of nodes
+     * up to depth maxDepth plus the number of their children.
+     */
+    public void precomputeTopValues(int k, int maxDepth) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+        }
+        if (weigher == null) {
+            throw new IllegalStateException("Trie is not weighted");
+        }
+        if (topDepth > maxDepth) {
+            discardTopValues(root, 0, maxDepth);
+        }
+        topK = k;
+        topDepth = maxDepth;
+        buildTopValues(root, 0);
+    }
+
+    /**
+     * Drops the top lists of the nodes below node that are deeper than maxDepth.
+     */
+    private void discardTopValues(Node<V> node, int depth, int maxDepth) {
+        if (depth > topDepth) {
+            return;
+        }
+        if (depth > maxDepth) {
+            node.topValues = null;
+        }
+        for (Node<V> child : node.getChildren()) {
+            discardTopValues(child, depth + 1, maxDepth);
+        }
+    }
+
+    /**
+     * Computes the top lists of node, which is at the specified depth, and of its descendants up
+     * to topDepth. Above topDepth, the list of a node is merged from its own value and the lists
+     * of its children, which already hold the heaviest values of each child's subtree.
+     */
+    @SuppressWarnings("unchecked")
+    private void buildTopValues(Node<V> node, int depth) {
+        if (depth == topDepth) {
+            node.topValues = searchTopValues(node, topK).toArray();
+            return;
+        }
+        List<V> candidates = new ArrayList<>();
+        if (node.hasValue()) {
+            candidates.add(node.getValue());
+        }
+        for (Node<V> child : node.getChildren()) {
+            buildTopValues(child, depth + 1);
+            for (Object value : child.topValues) {
+                candidates.add((V) value);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(weigher).reversed());
+        node.topValues = candidates.subList(0, Math.min(topK, candidates.size())).toArray();
+    }
+
+    /**
+     * Updates the top list of node after oldValue was replaced by newValue somewhere in its
+     * subtree, where either may be null. The list is replaced rather than modified, since it may
+     * be shared with other versions of the trie. It is only recomputed from the subtree when
+     * oldValue leaves a full list and no value known to be heavier than the rest of the subtree
+     * takes its place.
+     */
+    @SuppressWarnings("unchecked")
+    private void updateTopValues(Node<V> node, V oldValue, V newValue) {
+        Object[] top = node.topValues == null ? new Object[0] : node.topValues;
+        int removed = -1;
+        if (oldValue != null) {
+            for (int i = 0; i < top.length; i++) {
+                if (top[i] == oldValue) {
+                    removed = i;
+                    break;
+                }
+            }
+        }
+        List<Object> values = new ArrayList<>(top.length + 1);
+        for (int i = 0; i < top.length; i++) {
+            if (i != removed) {
+                values.add(top[i]);
+            }
+        }
+        int inserted = -1;
+        if (newValue != null) {
+            long weight = weigher.applyAsLong(newValue);
+            inserted = values.size();
+            while (inserted > 0 && weigher.applyAsLong((V) values.get(inserted - 1)) < weight) {
+                inserted--;
+            }
+            values.add(inserted, newValue);
+        }
+        if (values.size() > topK) {
+            values.remove(topK);
+        }
+        if (removed < 0 && (inserted < 0 || inserted == topK)) {
+            // Neither value is among the heaviest, so the list is unchanged
+            return;
+        }
+        if (removed >= 0 && top.length == topK && (inserted < 0 || inserted == topK - 1)) {
+            node.topValues = searchTopValues(node, topK).toArray();
+        } else {
+            node.topValues = values.toArray();
+        }
+    }
+
+    /**
+     * An entry in the frontier of the best-first search: either an unexpanded node, bounded by
+     * the maximum weight in its subtree, or a single value with its own weight.
+     */
+    private static final class Candidate<V> implements Comparable<Candidate<V>> {
+        private final Node<V> node;
+        private final V value;
+        private final long weight;
+
+        Candidate(Node<V> node, V value, long weight) {
+            this.node = node;
+            this.value = value;
+            this.weight = weight;
+        }
+
+        @Override
+        public int compareTo(Candidate<V> that) {
+            return Long.compare(that.weight, weight);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The {@link CharSequence} keys of the {@link Map.Entry} instances in the resulting iteration
+     * are mutable and should not be referenced directly. Instead, one should call
+     * {@link CharSequence#toString()} on the key to get an immutable reference.
+     * <p>
+     * The iterator must produce entries in lexicographic order. For example, {@code ("party", 99),
+     * ("pen", 24), ("penguin", 2), ("q", 17)}
+     * <p>
+     * Entries are produced lazily by a depth-first walk that keeps one node and one mask of
+     * unvisited children per level, and a single key buffer that is truncated and extended as
+     * the walk moves. The iterator throws {@link ConcurrentModificationException} if keys are
+     * added or removed after it was created.
+     *
+     * @implSpec This method should run in O(N) time.
+     * @implSpec This method should use O(H) space.
+     */
+    @Override
+    public Iterator<Map.Entry<CharSequence, V>> entryIterator() {
+        return new EntryIterator(root, "", true, root.getChildMask());
+    }
+
+    /**
+     * Returns an iterator over the entries whose keys have prefix as a prefix, in lexicographic
+     * order, produced lazily as by {@link #entryIterator()}.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return an iterator over the entries under prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time, plus O(1) amortized per entry consumed.
+     * @implSpec This method should use O(H) space.
+     */
+    public Iterator<Map.Entry<CharSequence, V>> entryIterator(CharSequence prefix) {
+        Node<V> node = nodeAt(prefix);
+        if (node == null) {
+            return Collections.emptyIterator();
+        }
+        return new EntryIterator(node, prefix, true, node.getChildMask());
+    }
+
+    /**
+     * Returns a spliterator over the entries whose keys have prefix as a prefix, in
+     * lexicographic order, for use with {@link java.util.stream.StreamSupport}. Its size is
+     * known exactly from the subtree counts. Until traversal starts, it splits off the first
+     * half of the remaining children of the shallowest node with more than one, so a parallel
+     * stream divides the subtree along the branches of the trie. Keys are mutable as described
+     * in {@link #entryIterator()}; each part of a split has its own key buffer.
+     *
+     * @param prefix possible prefix of some keys in the trie
+     * @return a spliterator over the entries under prefix
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     * @implSpec This method should run in O(H) time.
+     * @implSpec This method should use O(H) space.
+     */
+    public Spliterator<Map.Entry<CharSequence, V>> entrySpliterator(CharSequence prefix) {
+        Node<V> node = nodeAt(prefix);
+        if (node == null) {
+            return Spliterators.emptySpliterator();
+        }
+        return new EntrySpliterator(node, prefix.toString(), true, node.getChildMask());
+    }
+
+    /**
+     * Returns the node reached by prefix, or null if there is none.
+     *
+     * @throws IllegalArgumentException if the specified prefix is null or if the prefix contains
+     * characters that are not lowercase letters
+     */
+    private Node<V> nodeAt(CharSequence prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException();
+        }
+        Node<V> currentNode = root;
+        for (int i = 0; i < prefix.length() && currentNode != null; i++) {
+            currentNode = currentNode.getChild(prefix.charAt(i));
+        }
+        return currentNode;
+    }
+
+    /**
+     * The explicit stack of a depth-first traversal, so that the traversals of the trie neither
+     * recurse, which overflows the call stack on long keys, nor allocate per node. Level d holds
+     * a node and the position in its children array of the next child to visit. The arrays grow
+     * to at most the height of the deepest traversal and are kept, one stack per thread, between
+     * calls.
+     */
+    private static final class TraversalStack<V> {
+
+        private static final ThreadLocal<TraversalStack<?>> CACHED =
+                ThreadLocal.withInitial(TraversalStack::new);
+
+        @SuppressWarnings("unchecked")
+        private Node<V>[] nodes = new Node[16];
+        private int[] slots = new int[16];
+        private int size;
+        private boolean inUse;
+
+        /**
+         * Returns the stack of the calling thread, or a new stack if that one is already in use
+         * further up the call stack. Each call must be paired with {@link #release()}.
+         */
+        @SuppressWarnings("unchecked")
+        static <V> TraversalStack<V> acquire() {
+            TraversalStack<V> stack = (TraversalStack<V>) CACHED.get();
+            if (stack.inUse) {
+                stack = new TraversalStack<>();
+            }
+            stack.inUse = true;
+            return stack;
+        }
+
+        /**
+         * Empties the stack, so that it holds on to no nodes, and makes it available again.
+         */
+        void release() {
+            while (size > 0) {
+                nodes[--size] = null;
+            }
+            inUse = false;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(Node<V> node) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            nodes[size] = node;
+            slots[size] = 0;
+            size++;
+        }
+
+        Node<V> pop() {
+            Node<V> node = nodes[--size];
+            nodes[size] = null;
+            return node;
+        }
+
+        /**
+         * Returns the next unvisited child of the node on top, or null if there is none left.
+         */
+        Node<V> nextChild() {
+            Node<V>[] children = nodes[size - 1].children;
+            int slot = slots[size - 1];
+            if (slot == children.length) {
+                return null;
+            }
+            slots[size - 1] = slot + 1;
+            return children[slot];
+        }
+
+        /**
+         * Returns the next node in preorder, or null once the subtrees of every node pushed have
+         * been visited. A traversal pushes its start node, visits it, then calls this until it
+         * returns null. Leaves are returned without being pushed, and a node is popped as soon
+         * as its last child is returned, so a chain of single children takes one level.
+         */
+        Node<V> next() {
+            while (size > 0) {
+                int top = size - 1;
+                Node<V>[] children = nodes[top].children;
+                int slot = slots[top];
+                if (slot == children.length) {
+                    nodes[top] = null;
+                    size = top;
+                    continue;
+                }
+                if (slot + 1 == children.length) {
+                    // The last child replaces its parent, which has nothing left to visit
+                    nodes[top] = null;
+                    size = top;
+                } else {
+                    slots[top] = slot + 1;
+                }
+                Node<V> child = children[slot];
+                if (child.children.length != 0) {
+                    push(child);
+                }
+                return child;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Walks the entries under a start node depth first. Level 0 is the start node, whose value
+     * is only included on request and whose children are restricted to a mask, so that a
+     * spliterator can cover part of a node's children.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<CharSequence, V>> {
+
+        /**
+         * nodes[d] is the node at level d of the walk, and masks[d] holds the bits of its
+         * children that have not been visited yet.
+         */
+        @SuppressWarnings("unchecked")
+        private Node<V>[] nodes = new Node[16];
+        private int[] masks = new int[16];
+        private int depth;
+
+        /**
+         * The key of nodes[depth], preceded by the key of the start node.
+         */
+        private final StringBuilder key;
+        private final int base;
+
+        /**
+         * Whether the value of nodes[depth] is the next entry.
+         */
+        private boolean valuePending;
+        private final int expectedModCount = modCount;
+
+        EntryIterator(Node<V> start, CharSequence prefix, boolean includeValue, int childMask) {
+            nodes[0] = start;
+            masks[0] = childMask;
+            key = new StringBuilder(prefix);
+            base = key.length();
+            valuePending = includeValue && start.hasValue();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            while (!valuePending && depth >= 0) {
+                int mask = masks[depth];
+                if (mask == 0) {
+                    depth--;
+                    continue;
+                }
+                masks[depth] = mask & (mask - 1);
+                int bit = Integer.numberOfTrailingZeros(mask);
+                Node<V> parent = nodes[depth];
+                Node<V> child = parent.children[parent.slotOf(bit)];
+                key.setLength(base + depth);
+                key.append((char) ('a' + bit));
+                if (++depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    masks = Arrays.copyOf(masks, depth * 2);
+                }
+                nodes[depth] = child;
+                masks[depth] = child.childMask;
+                valuePending = child.hasValue();
+            }
+            return valuePending;
+        }
+
+        @Override
+        public Map.Entry<CharSequence, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            valuePending = false;
+            return new AbstractMap.SimpleImmutableEntry<>(key, nodes[depth].getValue());
+        }
+    }
+
+    /**
+     * Covers the value of a node, if included, followed by the subtrees of the children in a
+     * mask. Splitting divides the mask, or descends into the only child covered.
+     */
+    private final class EntrySpliterator implements Spliterator<Map.Entry<CharSequence, V>> {
+        private Node<V> node;
+        private String prefix;
+        private boolean includeValue;
+        private int mask;
+        private long remaining;
+        private EntryIterator iterator;
+
+        EntrySpliterator(Node<V> node, String prefix, boolean includeValue, int mask) {
+            this.node = node;
+            this.prefix = prefix;
+            this.includeValue = includeValue && node.hasValue();
+            this.mask = mask;
+            remaining = this.includeValue ? 1 : 0;
+            for (int m = mask; m != 0; m &= m - 1) {
+                remaining += child(Integer.numberOfTrailingZeros(m)).getValueCount();
+            }
+        }
+
+        private Node<V> child(int bit) {
+            return node.children[node.slotOf(bit)];
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<CharSequence, V>> action) {
+            if (iterator == null) {
+                iterator = new EntryIterator(node, prefix, includeValue, mask);
+            }
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            remaining--;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<CharSequence, V>> trySplit() {
+            while (iterator == null) {
+                int children = Integer.bitCount(mask);
+                if (children >= 2) {
+                    int low = 0;
+                    for (int i = 0; i < children / 2; i++) {
+                        low |= mask & -mask;
+                        mask &= mask - 1;
+                    }
+                    EntrySpliterator first = new EntrySpliterator(node, prefix, includeValue, low);
+                    includeValue = false;
+                    remaining -= first.remaining;
+                    return first;
+                }
+                if (children == 0) {
+                    return null;
+                }
+                if (includeValue) {
+                    EntrySpliterator first = new EntrySpliterator(node, prefix, true, 0);
+                    includeValue = false;
+                    remaining--;
+                    return first;
+                }
+                int bit = Integer.numberOfTrailingZeros(mask);
+                node = child(bit);
+                prefix = prefix + (char) ('a' + bit);
+                includeValue = node.hasValue();
+                mask = node.childMask;
+            }
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | SIZED | SUBSIZED;
+        }
+    }
+
+
 
-
     /** 
      * Node class for the Trie
      * You may modify this class (see write up)
+     * <p>
+     * Children are stored compactly: bit {@code i} of {@code childMask} is set when there is a
+     * child for the character {@code 'a' + i}, and {@code children} holds exactly the present
+     * children in alphabetical order. The slot of a child is the number of set bits below its
+     * own bit, so a node with one child costs a one-element array rather than a 26-slot one.
     */
     
     static class Node<V> {
-        
+
+        @SuppressWarnings("unchecked")
+        private static final Node[] NO_CHILDREN = new Node[0];
+
         private V value;
-        private Node<V>[] children;
+        private int childMask;
+        @SuppressWarnings("unchecked")
+        private Node<V>[] children = NO_CHILDREN;
+        private long maxWeight = Long.MIN_VALUE;
+        private int valueCount;
+        private Object[] topValues;
 
 
         public Node(V value) {
@@ -390,39 +1686,59 @@ public class Trie<V> implements ITrie<V> {
         }
 
         /**
-         * Converts a {@code char} into an array index.
-         * <p>
-         * Effectively maps {@code a -> 0, b -> 1, ..., z -> 25}.
+         * Returns a copy of this node that shares its children but not its children array, so
+         * that replacing a child of the copy leaves this node unchanged.
          *
-         * @param c the character
-         * @return the array index corresponding to the specified character
-         * @throws IllegalArgumentException if the specified character is not valid as an index
+         * @return a copy of this node
          */
-
-        /**
-         * Carrier for a value and an array of children.
-         */
-
-        @SuppressWarnings("unchecked")
-        public void initChildren() {
-            this.children = new Node[26];
+        Node<V> copy() {
+            Node<V> copy = new Node<>(value);
+            copy.childMask = childMask;
+            copy.children = children.length == 0 ? children : children.clone();
+            copy.maxWeight = maxWeight;
+            copy.valueCount = valueCount;
+            copy.topValues = topValues;
+            return copy;
         }
 
         /**
-         * Returns the children array of the node
+         * Returns the children array of the node, holding only the present children in
+         * alphabetical order. Use {@link #getChildMask()} to recover their characters.
          * Used by the visualizer to draw out the trie
          */
         public Node<V>[] getChildren() {
             return children;
         }
 
+        /**
+         * Returns the occupancy bitmap of this node's children, where bit {@code i} is set if
+         * there is a child for the character {@code 'a' + i}.
+         *
+         * @return the occupancy bitmap of this node's children
+         */
+        public int getChildMask() {
+            return childMask;
+        }
+
         /**
          * Returns {@code true} if this node has child nodes.
          *
          * @return {@code true} if this node has child nodes
+         * @implSpec This method should run in O(1) time.
          */
         public boolean hasChildren() {
-            return children != null && Arrays.stream(children).anyMatch(Objects::nonNull);
+            return childMask != 0;
+        }
+
+        /**
+         * Returns the number of child nodes of this node, which is also the length of
+         * {@link #getChildren()}.
+         *
+         * @return the number of child nodes of this node
+         * @implSpec This method should run in O(1) time.
+         */
+        public int childCount() {
+            return Integer.bitCount(childMask);
         }
 
         /**
@@ -434,10 +1750,19 @@ public class Trie<V> implements ITrie<V> {
          * child
          */
         public Node<V> getChild(char c) {
-            if (children == null) {
+            int bit = 1 << convertToIndex(c);
+            if ((childMask & bit) == 0) {
                 return null;
             }
-            return children[convertToIndex(c)];
+            return children[Integer.bitCount(childMask & (bit - 1))];
+        }
+
+        /**
+         * Returns the position in the children array of the child for the character
+         * {@code 'a' + index}, which must be present.
+         */
+        int slotOf(int index) {
+            return Integer.bitCount(childMask & ((1 << index) - 1));
         }
 
         /**
@@ -446,11 +1771,28 @@ public class Trie<V> implements ITrie<V> {
          * @param c    the character corresponding to the child to set
          * @param node the node to add as a child
          */
+        @SuppressWarnings("unchecked")
         public void setChild(char c, Node<V> node) {
-            if (children == null) {
-                initChildren();
+            int bit = 1 << convertToIndex(c);
+            int slot = Integer.bitCount(childMask & (bit - 1));
+            if ((childMask & bit) != 0) {
+                if (node != null) {
+                    children[slot] = node;
+                    return;
+                }
+                Node<V>[] shrunk = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+                System.arraycopy(children, 0, shrunk, 0, slot);
+                System.arraycopy(children, slot + 1, shrunk, slot, children.length - slot - 1);
+                children = shrunk;
+                childMask &= ~bit;
+            } else if (node != null) {
+                Node<V>[] grown = new Node[children.length + 1];
+                System.arraycopy(children, 0, grown, 0, slot);
+                grown[slot] = node;
+                System.arraycopy(children, slot, grown, slot + 1, children.length - slot);
+                children = grown;
+                childMask |= bit;
             }
-            children[convertToIndex(c)] = node;
         }
 
         /**
@@ -477,5 +1819,40 @@ public class Trie<V> implements ITrie<V> {
         public void setValue(V value) {
             this.value = value;
         }
+
+        /**
+         * Returns the number of values in this node's subtree, including its own value.
+         *
+         * @return the number of values in this node's subtree
+         */
+        public int getValueCount() {
+            return valueCount;
+        }
+
+        /**
+         * Returns the maximum weight of the values in this node's subtree, or
+         * {@code Long.MIN_VALUE} if the trie is not weighted or the subtree is empty.
+         *
+         * @return the maximum weight in this node's subtree
+         */
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+
+        /**
+         * Sets the maximum weight of the values in this node's subtree.
+         */
+        public void setMaxWeight(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        /**
+         * Raises the maximum weight of this node's subtree to at least the specified weight.
+         */
+        void raiseMaxWeight(long weight) {
+            if (weight > maxWeight) {
+                maxWeight = weight;
+            }
+        }
     }
 }
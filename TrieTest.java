@@ -239,4 +239,528 @@ public class TrieTest {
         expectedTwo.add(1210);
         assertEquals(expectedTwo, myTrie.allValuesWithPrefix("a"));
     }
+
+    @Test
+    public void testTopValuesWithPrefix() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("apple", 2);
+        myTrie.put("app", 3);
+        myTrie.put("arvind", 1210);
+        assertEquals(Arrays.asList(9, 7), myTrie.topValuesWithPrefix("ba", 2,
+                Comparator.reverseOrder()));
+        assertEquals(Arrays.asList(1210, 3, 2), myTrie.topValuesWithPrefix("a", 5,
+                Comparator.reverseOrder()));
+        assertEquals(Collections.emptyList(), myTrie.topValuesWithPrefix("canada", 2,
+                Comparator.reverseOrder()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTopValuesWithPrefixNonPositiveK() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("mudit", 1);
+        myTrie.topValuesWithPrefix("m", 0, Comparator.reverseOrder());
+    }
+
+    @Test
+    public void testWeightedTopValuesWithPrefix() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("band", 4);
+        myTrie.put("apple", 2);
+        assertEquals(9, myTrie.getRoot().getMaxWeight());
+        assertEquals(Arrays.asList(9, 7), myTrie.topValuesWithPrefix("ba", 2));
+        assertEquals(Arrays.asList(9, 7, 4, 1), myTrie.topValuesWithPrefix("ba", 10));
+        assertEquals(Collections.emptyList(), myTrie.topValuesWithPrefix("canada", 2));
+    }
+
+    @Test
+    public void testWeightedMaxWeightAfterReplaceAndRemove() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("banan", 9);
+        myTrie.put("ban", 7);
+        myTrie.put("apple", 2);
+        myTrie.put("banan", 3);
+        assertEquals(7, myTrie.getRoot().getMaxWeight());
+        assertEquals(Arrays.asList(7, 3), myTrie.topValuesWithPrefix("b", 5));
+        myTrie.remove("ban");
+        assertEquals(3, myTrie.getRoot().getMaxWeight());
+        myTrie.remove("banan");
+        assertEquals(2, myTrie.getRoot().getMaxWeight());
+        assertEquals(Collections.emptyList(), myTrie.topValuesWithPrefix("b", 5));
+    }
+
+    @Test
+    public void testWeightedPutInvalidKeyLeavesTrieUnchanged() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("apple", 2);
+        try {
+            myTrie.put("ban1", 9);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // The key is rejected before the path to it is touched
+        }
+        assertEquals(2, myTrie.getRoot().getMaxWeight());
+        assertNull(myTrie.getRoot().getChild('b'));
+        assertEquals(1, myTrie.size());
+        assertEquals(Arrays.asList(2), myTrie.topValuesWithPrefix("", 5));
+    }
+
+    @Test
+    public void testWeightedLoaderPutInvalidKeyLeavesTrieUnchanged() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        try (Trie<Integer>.Loader loader = myTrie.loader()) {
+            loader.put("apple", 2);
+            try {
+                loader.put("ban1", 9);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // The key is rejected before the path to it is touched
+            }
+            loader.put("bat", 4);
+        }
+        assertEquals(4, myTrie.getRoot().getMaxWeight());
+        assertNull(myTrie.getRoot().getChild('b').getChild('a').getChild('n'));
+        assertEquals(2, myTrie.size());
+        assertEquals(Arrays.asList(4, 2), myTrie.topValuesWithPrefix("", 5));
+        myTrie.remove("bat");
+        assertNull(myTrie.getRoot().getChild('b'));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTopValuesWithPrefixUnweighted() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("mudit", 1);
+        myTrie.topValuesWithPrefix("m", 1);
+    }
+
+    @Test
+    public void testCountPrefixAfterRemove() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("banana", 1);
+        myTrie.put("banan", 1);
+        myTrie.put("ban", 1);
+        myTrie.put("ban", 2);
+        myTrie.put("apple", 2);
+        assertEquals(4, myTrie.countPrefixes(""));
+        assertEquals(3, myTrie.countPrefixes("ba"));
+        myTrie.remove("banan");
+        myTrie.remove("goat");
+        assertEquals(2, myTrie.countPrefixes("ba"));
+        assertEquals(1, myTrie.countPrefixes("banana"));
+        myTrie.remove("banana");
+        assertEquals(1, myTrie.countPrefixes("ba"));
+        assertEquals(0, myTrie.countPrefixes("bana"));
+        assertEquals(2, myTrie.countPrefixes(""));
+    }
+
+    @Test
+    public void testNodeChildrenArePacked() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("z", 3);
+        myTrie.put("a", 1);
+        myTrie.put("m", 2);
+        Trie.Node<Integer> root = myTrie.getRoot();
+        assertEquals(3, root.getChildren().length);
+        assertEquals((1 << 0) | (1 << 12) | (1 << 25), root.getChildMask());
+        assertEquals((Integer) 1, root.getChildren()[0].getValue());
+        assertEquals((Integer) 2, root.getChildren()[1].getValue());
+        assertEquals((Integer) 3, root.getChildren()[2].getValue());
+        myTrie.remove("m");
+        assertEquals(2, root.getChildren().length);
+        assertNull(root.getChild('m'));
+        assertEquals((Integer) 3, root.getChild('z').getValue());
+    }
+
+    @Test
+    public void testNodeChildCount() {
+        Trie.Node<Integer> node = new Trie.Node<>(null);
+        assertFalse(node.hasChildren());
+        assertEquals(0, node.childCount());
+        node.setChild('q', new Trie.Node<>(1));
+        node.setChild('b', new Trie.Node<>(2));
+        assertTrue(node.hasChildren());
+        assertEquals(2, node.childCount());
+        // Replacing a child leaves the count unchanged
+        node.setChild('q', new Trie.Node<>(3));
+        assertEquals(2, node.childCount());
+        assertEquals((Integer) 3, node.getChild('q').getValue());
+        node.setChild('x', null);
+        assertEquals(2, node.childCount());
+        node.setChild('q', null);
+        node.setChild('b', null);
+        assertFalse(node.hasChildren());
+        assertEquals(0, node.getChildren().length);
+    }
+
+    @Test
+    public void testLoader() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        try (Trie<Integer>.Loader loader = myTrie.loader()) {
+            assertNull(loader.put("ban", 7));
+            assertNull(loader.put("banan", 9));
+            assertNull(loader.put("banana", 1));
+            assertNull(loader.put("apple", 2));
+            assertEquals((Integer) 7, loader.put("ban", 3));
+        }
+        assertEquals(4, myTrie.size());
+        assertEquals((Integer) 3, myTrie.get("ban"));
+        assertEquals(3, myTrie.countPrefixes("ba"));
+        assertEquals(9, myTrie.getRoot().getMaxWeight());
+        assertEquals(Arrays.asList(9, 3), myTrie.topValuesWithPrefix("b", 2));
+    }
+
+    @Test
+    public void testGraft() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("apple", 2);
+        Trie<Integer> shard = new Trie<>(Integer::longValue);
+        shard.put("banana", 1);
+        shard.put("ban", 7);
+        myTrie.graft('b', shard);
+        assertTrue(shard.isEmpty());
+        assertEquals(3, myTrie.size());
+        assertEquals(3, myTrie.countPrefixes(""));
+        assertEquals((Integer) 7, myTrie.get("ban"));
+        assertEquals(Arrays.asList(7, 2), myTrie.topValuesWithPrefix("", 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGraftWrongLetter() {
+        Trie<Integer> myTrie = new Trie<>();
+        Trie<Integer> shard = new Trie<>();
+        shard.put("apple", 2);
+        myTrie.graft('b', shard);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGraftOccupiedLetter() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("banana", 1);
+        Trie<Integer> shard = new Trie<>();
+        shard.put("ban", 7);
+        myTrie.graft('b', shard);
+    }
+
+    @Test
+    public void testWithPutLeavesOriginalUnchanged() {
+        Trie<Integer> original = new Trie<>(Integer::longValue);
+        original.put("banana", 1);
+        original.put("ban", 7);
+        original.put("apple", 2);
+        Trie<Integer> updated = original.withPut("band", 9).withPut("ban", 3);
+        assertEquals(3, original.size());
+        assertEquals((Integer) 7, original.get("ban"));
+        assertNull(original.get("band"));
+        assertEquals(2, original.countPrefixes("ba"));
+        assertEquals(7, original.getRoot().getMaxWeight());
+        assertEquals(4, updated.size());
+        assertEquals((Integer) 3, updated.get("ban"));
+        assertEquals(3, updated.countPrefixes("ba"));
+        assertEquals(Arrays.asList(9, 3, 1), updated.topValuesWithPrefix("b", 5));
+        assertSame(original.getRoot().getChild('a'), updated.getRoot().getChild('a'));
+    }
+
+    @Test
+    public void testWithRemoveLeavesOriginalUnchanged() {
+        Trie<Integer> original = new Trie<>(Integer::longValue);
+        original.put("banana", 1);
+        original.put("ban", 7);
+        Trie<Integer> updated = original.withRemove("banana");
+        assertEquals(2, original.size());
+        assertEquals((Integer) 1, original.get("banana"));
+        assertEquals(1, updated.size());
+        assertNull(updated.get("banana"));
+        assertEquals(1, updated.countPrefixes("b"));
+    }
+
+    @Test
+    public void testPrecomputedTopValuesMatchSearch() {
+        Random random = new Random(19);
+        Trie<Integer> precomputed = new Trie<>(Integer::longValue);
+        Trie<Integer> searched = new Trie<>(Integer::longValue);
+        precomputed.precomputeTopValues(3, 2);
+        for (int op = 0; op < 3000; op++) {
+            StringBuilder key = new StringBuilder();
+            int length = random.nextInt(4);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(3)));
+            }
+            if (random.nextInt(3) == 0) {
+                assertEquals(searched.remove(key), precomputed.remove(key));
+            } else {
+                int value = random.nextInt(50);
+                assertEquals(searched.put(key, value), precomputed.put(key, value));
+            }
+            for (String prefix : Arrays.asList("", "a", "b", "c", "ab", "ca", "bb")) {
+                for (int k = 1; k <= 4; k++) {
+                    assertEquals(searched.topValuesWithPrefix(prefix, k),
+                            precomputed.topValuesWithPrefix(prefix, k));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPrecomputeTopValuesAfterLoad() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("apple", 2);
+        myTrie.put("ban", 7);
+        myTrie.precomputeTopValues(2, 1);
+        try (Trie<Integer>.Loader loader = myTrie.loader()) {
+            loader.put("banana", 9);
+            loader.put("ban", 1);
+        }
+        assertEquals(Arrays.asList(9, 2), myTrie.topValuesWithPrefix("", 2));
+        assertEquals(Arrays.asList(9, 1), myTrie.topValuesWithPrefix("b", 2));
+        Trie<Integer> shard = new Trie<>(Integer::longValue);
+        shard.put("cherry", 12);
+        shard.put("cat", 4);
+        myTrie.graft('c', shard);
+        assertEquals(Arrays.asList(12, 9), myTrie.topValuesWithPrefix("", 2));
+        assertEquals(Arrays.asList(12, 4), myTrie.topValuesWithPrefix("c", 2));
+        // Shrinking the depth keeps the remaining lists correct
+        myTrie.precomputeTopValues(1, 0);
+        assertEquals(Arrays.asList(12), myTrie.topValuesWithPrefix("", 1));
+        assertEquals(Arrays.asList(12, 4), myTrie.topValuesWithPrefix("c", 2));
+    }
+
+    @Test
+    public void testPrecomputedTopValuesWithPut() {
+        Trie<Integer> original = new Trie<>(Integer::longValue);
+        original.put("banana", 1);
+        original.put("ban", 7);
+        original.precomputeTopValues(2, 3);
+        Trie<Integer> updated = original.withPut("band", 9).withRemove("ban");
+        assertEquals(Arrays.asList(7, 1), original.topValuesWithPrefix("ba", 2));
+        assertEquals(Arrays.asList(9, 1), updated.topValuesWithPrefix("ba", 2));
+        assertEquals(Arrays.asList(9, 1), updated.topValuesWithPrefix("", 5));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrecomputeTopValuesUnweighted() {
+        new Trie<Integer>().precomputeTopValues(3, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecomputeTopValuesNegativeDepth() {
+        new Trie<Integer>(Integer::longValue).precomputeTopValues(3, -1);
+    }
+
+    @Test
+    public void testCursor() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("ban", 7);
+        myTrie.put("banana", 1);
+        myTrie.put("band", 9);
+        myTrie.put("apple", 2);
+        Trie<Integer>.Cursor cursor = myTrie.cursor();
+        assertEquals(4, cursor.countValues());
+        cursor.advance('b');
+        cursor.advance('a');
+        assertEquals("ba", cursor.prefix());
+        assertEquals(3, cursor.countValues());
+        assertEquals(Arrays.asList(9, 7), cursor.topValues(2));
+        cursor.advance('n');
+        cursor.advance('a');
+        assertEquals(Arrays.asList(1), cursor.allValues());
+        cursor.advance('x');
+        cursor.advance('y');
+        assertEquals(0, cursor.countValues());
+        assertEquals(Collections.emptyList(), cursor.topValues(2));
+        assertTrue(cursor.retreat());
+        assertTrue(cursor.retreat());
+        assertTrue(cursor.retreat());
+        assertEquals("ban", cursor.prefix());
+        assertEquals(Arrays.asList(7, 1, 9), cursor.allValues());
+        while (cursor.retreat()) {
+            // back to the root
+        }
+        assertEquals(4, cursor.countValues());
+        assertFalse(cursor.retreat());
+    }
+
+    @Test
+    public void testCursorFollowsModifications() {
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        myTrie.put("band", 9);
+        Trie<Integer>.Cursor cursor = myTrie.cursor();
+        for (char c : "bane".toCharArray()) {
+            cursor.advance(c);
+        }
+        assertEquals(0, cursor.countValues());
+        myTrie.put("banes", 4);
+        assertEquals(1, cursor.countValues());
+        assertEquals(Arrays.asList(4), cursor.topValues(3));
+        myTrie.remove("banes");
+        assertEquals(0, cursor.countValues());
+        cursor.retreat();
+        assertEquals(Arrays.asList(9), cursor.topValues(3));
+        myTrie.clear();
+        assertEquals(0, cursor.countValues());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCursorInvalidCharacter() {
+        new Trie<Integer>().cursor().advance('B');
+    }
+
+    @Test
+    public void testEntryIterator() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("q", 17);
+        myTrie.put("penguin", 2);
+        myTrie.put("party", 99);
+        myTrie.put("pen", 24);
+        myTrie.put("", 5);
+        List<String> entries = new ArrayList<>();
+        for (Iterator<Map.Entry<CharSequence, Integer>> it = myTrie.entryIterator(); it.hasNext(); ) {
+            Map.Entry<CharSequence, Integer> entry = it.next();
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        assertEquals(Arrays.asList("=5", "party=99", "pen=24", "penguin=2", "q=17"), entries);
+        entries.clear();
+        for (Iterator<Map.Entry<CharSequence, Integer>> it = myTrie.entryIterator("pe"); it.hasNext(); ) {
+            Map.Entry<CharSequence, Integer> entry = it.next();
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        assertEquals(Arrays.asList("pen=24", "penguin=2"), entries);
+        assertFalse(myTrie.entryIterator("x").hasNext());
+        assertFalse(new Trie<Integer>().entryIterator().hasNext());
+    }
+
+    @Test
+    public void testEntryIteratorMatchesSortedKeys() {
+        Random random = new Random(7);
+        Trie<Integer> myTrie = new Trie<>();
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder key = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(4)));
+            }
+            myTrie.put(key, i);
+            expected.put(key.toString(), i);
+        }
+        Iterator<Map.Entry<CharSequence, Integer>> it = myTrie.entryIterator();
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertTrue(it.hasNext());
+            Map.Entry<CharSequence, Integer> actual = it.next();
+            assertEquals(entry.getKey(), actual.getKey().toString());
+            assertEquals(entry.getValue(), actual.getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testEntryIteratorConcurrentModification() {
+        Trie<Integer> myTrie = new Trie<>();
+        myTrie.put("ban", 7);
+        myTrie.put("band", 9);
+        Iterator<Map.Entry<CharSequence, Integer>> it = myTrie.entryIterator();
+        it.next();
+        myTrie.put("banana", 1);
+        it.hasNext();
+    }
+
+    @Test
+    public void testEntrySpliterator() {
+        Random random = new Random(11);
+        Trie<Integer> myTrie = new Trie<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder key = new StringBuilder("ab");
+            int length = random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(26)));
+            }
+            if (myTrie.put(key, i) == null) {
+                expected.add(key.toString());
+            }
+        }
+        myTrie.put("b", 1);
+        Collections.sort(expected);
+        Spliterator<Map.Entry<CharSequence, Integer>> spliterator = myTrie.entrySpliterator("a");
+        assertEquals(expected.size(), spliterator.getExactSizeIfKnown());
+        List<String> parallel = java.util.stream.StreamSupport.stream(spliterator, true)
+                .map(entry -> entry.getKey().toString())
+                .collect(java.util.stream.Collectors.toList());
+        assertEquals(expected, parallel);
+        Spliterator<Map.Entry<CharSequence, Integer>> first = myTrie.entrySpliterator("ab");
+        Spliterator<Map.Entry<CharSequence, Integer>> prefix = first.trySplit();
+        assertNotNull(prefix);
+        assertEquals(expected.size(), prefix.estimateSize() + first.estimateSize());
+        assertEquals(0, myTrie.entrySpliterator("c").estimateSize());
+    }
+
+    @Test
+    public void testParallelAllValuesAndContainsValue() {
+        Random random = new Random(23);
+        Trie<Integer> myTrie = new Trie<>();
+        for (int i = 0; i < 30000; i++) {
+            StringBuilder key = new StringBuilder();
+            int length = 1 + random.nextInt(7);
+            for (int j = 0; j < length; j++) {
+                key.append((char) ('a' + random.nextInt(j < 3 ? 2 : 26)));
+            }
+            myTrie.put(key, i);
+        }
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            for (String prefix : Arrays.asList("", "a", "ab", "bab", "zz")) {
+                assertEquals(myTrie.allValuesWithPrefix(prefix),
+                        myTrie.allValuesWithPrefix(prefix, pool));
+            }
+            Integer last = myTrie.allValuesWithPrefix("").get(myTrie.size() - 1);
+            assertTrue(myTrie.containsValue(last, pool));
+            assertFalse(myTrie.containsValue(-1, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelContainsValueNull() {
+        new Trie<Integer>().containsValue(null, java.util.concurrent.ForkJoinPool.commonPool());
+    }
+
+    @Test
+    public void testDeepKeys() {
+        // Far deeper than the call stack could recurse
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            key.append((char) ('a' + i % 26));
+        }
+        String deep = key.toString();
+        String half = deep.substring(0, 100000);
+        Trie<Integer> myTrie = new Trie<>(Integer::longValue);
+        try (Trie<Integer>.Loader loader = myTrie.loader()) {
+            loader.put(deep, 8);
+            loader.put(deep, 2);
+        }
+        assertEquals(2, myTrie.getRoot().getMaxWeight());
+        myTrie.put(deep, 5);
+        myTrie.put(half, 3);
+        myTrie.put(deep, 1);
+        assertEquals(3, myTrie.getRoot().getMaxWeight());
+        assertEquals(Arrays.asList(3, 1), myTrie.allValuesWithPrefix(""));
+        assertEquals(Arrays.asList(3, 1),
+                myTrie.allValuesWithPrefix("", java.util.concurrent.ForkJoinPool.commonPool()));
+        assertEquals(Arrays.asList(1), myTrie.topValuesWithPrefix("", 1, Comparator.naturalOrder()));
+        assertTrue(myTrie.containsValue(1));
+        assertFalse(myTrie.containsValue(5));
+        assertTrue(myTrie.containsValue(3, java.util.concurrent.ForkJoinPool.commonPool()));
+        assertNull(myTrie.remove(deep + "a"));
+        assertEquals((Integer) 1, myTrie.remove(deep));
+        assertEquals(Arrays.asList(3), myTrie.allValuesWithPrefix("abc"));
+        assertEquals(1, myTrie.countPrefixes(""));
+        assertEquals((Integer) 3, myTrie.remove(half));
+        assertFalse(myTrie.getRoot().hasChildren());
+        assertTrue(myTrie.isEmpty());
+    }
 }
@@ -0,0 +1,151 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses word bank files: a header line, then one {@code weight<TAB>word} entry per line.
+ * <p>
+ * Bytes are scanned directly, so no line {@code String}, {@code String[]} or boxed weight is
+ * created per entry. A line is accepted under the same rules {@code String.trim().split("\t")}
+ * imposed: surrounding whitespace is ignored, and there must be exactly two non-empty fields. The
+ * weight must consist of at most 18 decimal digits, and the word is lowercased. Other lines are
+ * skipped.
+ */
+final class WordBankParser {
+
+    /**
+     * Receives the entries of a word bank.
+     */
+    interface Sink {
+        /**
+         * Accepts one entry. The word is only valid until the next call and must be copied
+         * (for example with {@code toString()}) if it is retained.
+         *
+         * @param word   the lowercased word
+         * @param weight the weight of the word
+         */
+        void accept(CharSequence word, long weight);
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final StringBuilder word = new StringBuilder();
+
+    /**
+     * Streams the entries of the word bank with the specified file name into sink, skipping the
+     * header line.
+     *
+     * @param filename the word bank file
+     * @param sink     receives each entry in file order
+     * @throws IOException if the file cannot be read
+     */
+    static void parse(String filename, Sink sink) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            new WordBankParser().parse(in, sink);
+        }
+    }
+
+    private void parse(InputStream in, Sink sink) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int filled = 0;
+        boolean header = true;
+        int read;
+        while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            int consumed = 0;
+            if (header) {
+                int newline = indexOf(buffer, (byte) '\n', 0, filled);
+                if (newline < 0) {
+                    consumed = filled;
+                } else {
+                    consumed = newline + 1;
+                    header = false;
+                }
+            }
+            if (!header) {
+                consumed = parseLines(buffer, consumed, filled, false, sink);
+            }
+            System.arraycopy(buffer, consumed, buffer, 0, filled - consumed);
+            filled -= consumed;
+            if (filled == buffer.length) {
+                // A single line longer than the buffer
+                byte[] grown = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, grown, 0, filled);
+                buffer = grown;
+            }
+        }
+        if (!header) {
+            parseLines(buffer, 0, filled, true, sink);
+        }
+    }
+
+    /**
+     * Parses the lines in {@code bytes[from, to)}, which must start at the beginning of a line.
+     * Unless last is true, a final line without a terminating newline is left unparsed.
+     *
+     * @return the position just past the last line parsed
+     */
+    int parseLines(byte[] bytes, int from, int to, boolean last, Sink sink) {
+        int start = from;
+        while (start < to) {
+            int newline = indexOf(bytes, (byte) '\n', start, to);
+            if (newline < 0) {
+                if (!last) {
+                    return start;
+                }
+                newline = to;
+            }
+            parseLine(bytes, start, newline, sink);
+            start = newline + 1;
+        }
+        return Math.min(start, to);
+    }
+
+    private void parseLine(byte[] bytes, int start, int end, Sink sink) {
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        long weight = 0;
+        int i = start;
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') {
+            weight = weight * 10 + (bytes[i] - '0');
+            i++;
+        }
+        if (i == start || i == end || bytes[i] != '\t' || i - start > 18) {
+            return;
+        }
+        int wordStart = i + 1;
+        if (wordStart == end || indexOf(bytes, (byte) '\t', wordStart, end) >= 0) {
+            return;
+        }
+        word.setLength(0);
+        for (int j = wordStart; j < end; j++) {
+            int b = bytes[j];
+            if (b < 0) {
+                // Not plain ASCII, so decode the whole word properly
+                word.setLength(0);
+                word.append(new String(bytes, wordStart, end - wordStart, StandardCharsets.UTF_8)
+                        .toLowerCase());
+                break;
+            }
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            word.append((char) b);
+        }
+        sink.accept(word, weight);
+    }
+
+    private static int indexOf(byte[] bytes, byte target, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}